@@ -0,0 +1,218 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint;
+
+import cz.zipek.sqflint.linter.Options;
+import cz.zipek.sqflint.output.StreamUtil;
+import cz.zipek.sqflint.output.VoidOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Input files shared by all benchmarks.
+ * "tests" are sqf files from tests directory, "large" is single generated
+ * file with lot of macros, blocks and variables, "nested" is generated
+ * file with deeply nested loops.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class BenchmarkInput {
+	public static final String TESTS_DIR = "tests";
+	public static final int LARGE_SECTIONS = 5000;
+	public static final int NESTED_SECTIONS = 300;
+	public static final int NESTED_DEPTH = 12;
+
+	private final String path;
+	private final String contents;
+
+	public BenchmarkInput(String path, String contents) {
+		this.path = path;
+		this.contents = contents;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public String getContents() {
+		return contents;
+	}
+
+	/**
+	 * @param name "tests" or "large"
+	 * @return files of specified input set
+	 * @throws IOException
+	 */
+	public static List<BenchmarkInput> load(String name) throws IOException {
+		Path root = Paths.get(TESTS_DIR).toAbsolutePath();
+
+		switch (name) {
+			case "tests":
+				List<BenchmarkInput> result = new ArrayList<>();
+				List<Path> files;
+				try (Stream<Path> list = Files.list(root)) {
+					files = list
+						.filter(p -> p.getFileName().toString().endsWith(".sqf"))
+						.sorted()
+						.collect(Collectors.toList());
+				}
+				for (Path file : files) {
+					result.add(new BenchmarkInput(
+						file.toString(),
+						StreamUtil.fileToString(file.toString())
+					));
+				}
+				return result;
+			case "large":
+				return Collections.singletonList(new BenchmarkInput(
+					root.resolve("large.sqf").toString(),
+					generate(LARGE_SECTIONS)
+				));
+			case "nested":
+				return Collections.singletonList(new BenchmarkInput(
+					root.resolve("nested.sqf").toString(),
+					generateNested(NESTED_SECTIONS, NESTED_DEPTH)
+				));
+			default:
+				throw new IllegalArgumentException("Unknown input " + name);
+		}
+	}
+
+	/**
+	 * @return options used to lint benchmark inputs, without any output
+	 * @throws IOException
+	 */
+	public static Options createOptions() throws IOException {
+		Options options = new Options();
+		options.setOutputFormatter(new VoidOutput());
+		options.setRootPath(Paths.get(TESTS_DIR).toAbsolutePath().toString());
+		return options;
+	}
+
+	/**
+	 * Generates header made of multi-line macros, in the style of CBA
+	 * macro libraries. Every macro takes four lines, three of them end
+	 * with escaped line end.
+	 *
+	 * @param lines number of lines to generate
+	 * @return script contents
+	 */
+	public static String generateMultiline(int lines) {
+		StringBuilder result = new StringBuilder();
+
+		for (int i = 0; i < lines / 4; i++) {
+			result.append("#define LOG_").append(i).append("(message) \\\n");
+			result.append("\tprivate _text = format [\"%1: %2\", ").append(i).append(", message]; \\\n");
+			result.append("\tdiag_log _text; \\\n");
+			result.append("\tsystemChat _text\n");
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * Generates script where every line reports undefined variable.
+	 * Lines are inside forEach blocks.
+	 *
+	 * @param warnings number of warnings to generate
+	 * @return script contents
+	 */
+	public static String generateWarnings(int warnings) {
+		StringBuilder result = new StringBuilder();
+
+		for (int i = 0; i < warnings; i++) {
+			result.append("{ diag_log format [\"%1 %2\", _x, _missing").append(i).append("]; } forEach [")
+				.append(i).append("];\n");
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * Generates script with for and forEach loops nested in each other.
+	 *
+	 * @param sections number of repeated loop nests
+	 * @param depth number of loops in every nest
+	 * @return script contents
+	 */
+	public static String generateNested(int sections, int depth) {
+		StringBuilder result = new StringBuilder();
+
+		for (int i = 0; i < sections; i++) {
+			for (int level = 0; level < depth; level++) {
+				if (level % 2 == 0) {
+					result.append("for \"_i").append(level).append("\" from 0 to 1 do {\n");
+					result.append("private _value").append(level).append(" = _i").append(level).append(";\n");
+				} else {
+					result.append("{\n");
+					result.append("private _value").append(level).append(" = _x + _value").append(level - 1).append(";\n");
+				}
+				result.append("diag_log _value").append(level).append(";\n");
+			}
+			for (int level = depth - 1; level >= 0; level--) {
+				result.append(level % 2 == 0 ? "};\n" : "} forEach [1, 2];\n");
+			}
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * Generates script similar to real mission code.
+	 *
+	 * @param sections number of repeated code sections
+	 * @return script contents
+	 */
+	public static String generate(int sections) {
+		StringBuilder result = new StringBuilder();
+		result.append("#define GVAR(var) bench_main_##var\n");
+		result.append("#define QGVAR(var) #var\n");
+		result.append("#define ADD(a,b) ((a) + (b))\n");
+		result.append("#define LIMIT 10\n\n");
+
+		for (int i = 0; i < sections; i++) {
+			result.append("// Section ").append(i).append('\n');
+			result.append("private _value").append(i).append(" = ADD(_index, ").append(i).append(");\n");
+			result.append("GVAR(list").append(i).append(") = [_value").append(i)
+				.append(", QGVAR(name").append(i).append("), \"text\"];\n");
+			result.append("if (_value").append(i).append(" > LIMIT) then {\n");
+			result.append("\t{\n");
+			result.append("\t\tprivate _item = _x;\n");
+			result.append("\t\tdiag_log format [\"%1: %2\", _forEachIndex, _item];\n");
+			result.append("\t} forEach GVAR(list").append(i).append(");\n");
+			result.append("} else {\n");
+			result.append("\t_value").append(i).append(" = _value").append(i).append(" * 2;\n");
+			result.append("};\n\n");
+		}
+
+		return result.toString();
+	}
+}
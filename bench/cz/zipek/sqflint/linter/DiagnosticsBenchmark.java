@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.linter;
+
+import cz.zipek.sqflint.BenchmarkInput;
+import cz.zipek.sqflint.parser.StringCharStream;
+import cz.zipek.sqflint.preprocessor.SQFPreprocessor;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures analysis of file with lot of warnings.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiagnosticsBenchmark {
+	@Param({ "1000", "10000", "50000" })
+	public int warnings;
+
+	private Options options;
+	private SQFPreprocessor preprocessor;
+	private String path;
+	private String contents;
+
+	@Setup
+	public void setup() throws Exception {
+		options = BenchmarkInput.createOptions();
+		preprocessor = new SQFPreprocessor(options);
+		path = BenchmarkInput.TESTS_DIR + "/warnings.sqf";
+		contents = preprocessor.process(BenchmarkInput.generateWarnings(warnings), path, true);
+	}
+
+	@Benchmark
+	public void start(Blackhole blackhole) throws IOException {
+		Linter linter = new Linter(
+			options,
+			preprocessor,
+			new StringCharStream(contents),
+			path
+		);
+		blackhole.consume(linter.start());
+
+		// Problems are only read in order when the output is created
+		for (Warning warning : linter.getWarnings()) {
+			blackhole.consume(warning);
+		}
+	}
+}
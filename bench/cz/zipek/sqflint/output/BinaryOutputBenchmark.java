@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.output;
+
+import cz.zipek.sqflint.BenchmarkInput;
+import cz.zipek.sqflint.linter.Options;
+import cz.zipek.sqflint.linter.SqfFile;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures printing of binary server responses for already processed
+ * input set. Every invocation uses new session, so all strings are sent.
+ * Size of responses in both formats is printed during setup.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryOutputBenchmark {
+	@Param({ "tests", "large" })
+	public String input;
+
+	private final List<SqfFile> files = new ArrayList<>();
+
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	private final PrintStream stream = new PrintStream(buffer);
+
+	@Setup
+	public void setup() throws IOException {
+		Options options = BenchmarkInput.createOptions();
+		options.setOutputVariables(true);
+
+		for (BenchmarkInput file : BenchmarkInput.load(input)) {
+			SqfFile sqfFile = new SqfFile(options, file.getContents(), file.getPath());
+			sqfFile.process();
+			files.add(sqfFile);
+		}
+
+		long json = 0;
+		BinaryOutput.Session session = new BinaryOutput.Session();
+		for (SqfFile file : files) {
+			buffer.reset();
+			new ServerOutput(file.getFilePath()).print(file, stream, stream);
+			json += buffer.size();
+		}
+		buffer.reset();
+		for (SqfFile file : files) {
+			new BinaryOutput(session, file.getFilePath(), null).print(file, stream, stream);
+		}
+		System.out.println("JSON " + json + " B, binary " + buffer.size() + " B");
+	}
+
+	@Benchmark
+	public void binary(Blackhole blackhole) {
+		BinaryOutput.Session session = new BinaryOutput.Session();
+		for (SqfFile file : files) {
+			buffer.reset();
+			new BinaryOutput(session, file.getFilePath(), null).print(file, stream, stream);
+			blackhole.consume(buffer.size());
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.sqf.operators;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures how long it takes to load commands in a fresh JVM,
+ * once using the compiled table and once parsing the text list.
+ * Every run is done in new process, as only the cold start matters here.
+ * 
+ * Run using ant bench-startup.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class CommandTableBenchmark {
+	private static final int RUNS = 10;
+	
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			long start = System.nanoTime();
+			OperatorRegistry registry = OperatorRegistry.load(args[0].equals("table"));
+			long time = System.nanoTime() - start;
+			
+			System.out.println(time + " " + registry.size());
+			return;
+		}
+		
+		for (String mode : new String[] { "text", "table" }) {
+			List<Long> times = new ArrayList<>();
+			for (int i = 0; i < RUNS; i++) {
+				times.add(measure(mode));
+			}
+			Collections.sort(times);
+			
+			System.out.println(String.format(
+				"%-6s median %6.2f ms, min %6.2f ms",
+				mode,
+				times.get(RUNS / 2) / 1e6,
+				times.get(0) / 1e6
+			));
+		}
+	}
+	
+	private static long measure(String mode) throws IOException, InterruptedException {
+		Process process = new ProcessBuilder(
+			System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+			"-cp",
+			System.getProperty("java.class.path"),
+			CommandTableBenchmark.class.getName(),
+			mode
+		).redirectErrorStream(true).start();
+		
+		String line;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+			line = reader.readLine();
+		}
+		process.waitFor();
+		
+		return Long.parseLong(line.split(" ")[0]);
+	}
+}
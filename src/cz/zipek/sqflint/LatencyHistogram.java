@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Lock free histogram of durations.
+ * Values are grouped by their highest bit, every power of two is then split
+ * into 8 buckets, so reported percentiles are at most 12.5% higher than
+ * the real value. Recording only increments one bucket and can be done by
+ * any number of threads.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class LatencyHistogram {
+	private static final int SUB_BITS = 3;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * @param nanos duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		buckets.incrementAndGet(indexOf(value));
+		max.accumulate(value);
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @return highest recorded value in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Finds value which is higher or equal to specified share of recorded
+	 * values. Values recorded while this is running may or may not be
+	 * included.
+	 *
+	 * @param percentile percentile between 0 and 100
+	 * @return value in nanoseconds, 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			count += counts[i];
+		}
+
+		if (count == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long)Math.ceil(count * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(upperBound(i), getMax());
+			}
+		}
+
+		return getMax();
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_COUNT) {
+			return (int)value;
+		}
+
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		int sub = (int)(value >>> shift) & (SUB_COUNT - 1);
+
+		return (shift + 1) * SUB_COUNT + sub;
+	}
+
+	/**
+	 * @return highest value that falls into specified bucket
+	 */
+	static long upperBound(int index) {
+		if (index < SUB_COUNT) {
+			return index;
+		}
+
+		int shift = index / SUB_COUNT - 1;
+		long lower = (long)(SUB_COUNT + index % SUB_COUNT) << shift;
+
+		return lower + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint;
+
+import cz.zipek.sqflint.linter.Linter;
+import cz.zipek.sqflint.linter.PreProcessorError;
+import cz.zipek.sqflint.linter.SQFParseException;
+import cz.zipek.sqflint.linter.SQFVariable;
+import cz.zipek.sqflint.linter.SqfFile;
+import cz.zipek.sqflint.linter.Warning;
+import cz.zipek.sqflint.preprocessor.SQFInclude;
+import cz.zipek.sqflint.preprocessor.SQFMacro;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of linting single file by {@link SqfLintEngine}.
+ * Lists are copied when the result is created and can't be modified.
+ * 
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class LintResult {
+	private final String filePath;
+	private final int code;
+	private final PreProcessorError preProcessorError;
+	private final List<SQFParseException> errors;
+	private final List<Warning> warnings;
+	private final List<SQFInclude> includes;
+	private final List<SQFMacro> macros;
+	private final SqfFile sqfFile;
+	
+	LintResult(SqfFile sqfFile, int code) {
+		Linter linter = sqfFile.getLinter();
+		
+		this.sqfFile = sqfFile;
+		this.filePath = sqfFile.getFilePath();
+		this.code = code;
+		this.preProcessorError = sqfFile.getPreProcessorError();
+		
+		if (linter != null) {
+			errors = Collections.unmodifiableList(new ArrayList<>(linter.getErrors()));
+			warnings = Collections.unmodifiableList(new ArrayList<>(linter.getWarnings()));
+			includes = Collections.unmodifiableList(new ArrayList<>(linter.getIncludes()));
+			macros = Collections.unmodifiableList(new ArrayList<>(linter.getMacros()));
+		} else {
+			errors = Collections.emptyList();
+			warnings = Collections.emptyList();
+			includes = Collections.emptyList();
+			macros = Collections.emptyList();
+		}
+	}
+	
+	public String getFilePath() {
+		return filePath;
+	}
+	
+	/**
+	 * @return CODE_ERR if there were errors and exit code is enabled, CODE_OK otherwise
+	 */
+	public int getCode() {
+		return code;
+	}
+	
+	/**
+	 * @return error that stopped preprocessing, null if there was none
+	 */
+	public PreProcessorError getPreProcessorError() {
+		return preProcessorError;
+	}
+	
+	public List<SQFParseException> getErrors() {
+		return errors;
+	}
+	
+	public List<Warning> getWarnings() {
+		return warnings;
+	}
+	
+	public List<SQFInclude> getIncludes() {
+		return includes;
+	}
+	
+	public List<SQFMacro> getMacros() {
+		return macros;
+	}
+	
+	/**
+	 * @return variables used in the file, empty if the file wasn't linted
+	 */
+	public Map<String, SQFVariable> getVariables() {
+		Linter linter = sqfFile.getLinter();
+		return linter != null ? linter.getVariables() : Collections.emptyMap();
+	}
+	
+	/**
+	 * @return processed file, can be printed using any output formatter
+	 */
+	public SqfFile getSqfFile() {
+		return sqfFile;
+	}
+}
@@ -0,0 +1,355 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint;
+
+import cz.zipek.sqflint.linter.Options;
+import cz.zipek.sqflint.linter.SqfFile;
+import cz.zipek.sqflint.output.StreamUtil;
+import cz.zipek.sqflint.preprocessor.SQFIncludeCache;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of printed lint results stored in a directory, so unchanged files
+ * don't have to be preprocessed and parsed again in the next run.
+ * 
+ * Entries are keyed by path and contents of the file, options used to lint
+ * it and build of the linter. Every entry also remembers content hashes of
+ * all files it included and is only used when they are still the same.
+ * 
+ * Results that depend on other files than includes (path checking) and
+ * files that failed to preprocess are never cached.
+ * 
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class LintResultCache {
+	// Has to be changed when format of entries changes
+	private static final int VERSION = 1;
+	
+	private final Path directory;
+	private final String build;
+	
+	// Included files don't change during single run
+	private final Map<Path, String> currentHashes = new ConcurrentHashMap<>();
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	
+	/**
+	 * @param directory directory used to store entries, created if it doesn't exist
+	 * @throws IOException 
+	 */
+	public LintResultCache(Path directory) throws IOException {
+		this.directory = directory;
+		this.build = buildStamp();
+		
+		Files.createDirectories(directory);
+	}
+	
+	/**
+	 * Loads results of file with the same contents linted with the same options.
+	 * 
+	 * @param filePath path of linted file
+	 * @param contents contents of linted file
+	 * @param options options used to lint the file
+	 * @return cached results or null if there are none or they are outdated
+	 */
+	public Entry get(String filePath, String contents, Options options) {
+		if (options.isCheckPaths()) {
+			return null;
+		}
+		
+		Path file = directory.resolve(buildKey(filePath, contents, options));
+		if (Files.isRegularFile(file)) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+				Entry entry = Entry.read(in);
+				if (entry != null && isValid(entry)) {
+					hits.increment();
+					return entry;
+				}
+			} catch (IOException ex) {
+				// Broken entry is replaced after the file is linted
+			}
+		}
+		
+		misses.increment();
+		return null;
+	}
+	
+	/**
+	 * Prints results of processed file and stores them.
+	 * 
+	 * @param filePath path of linted file
+	 * @param contents contents of linted file before preprocessing
+	 * @param options options used to lint the file
+	 * @param sqfFile processed file
+	 * @param code exit code of the file
+	 * @return entry with printed results
+	 */
+	public Entry put(String filePath, String contents, Options options, SqfFile sqfFile, int code) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		
+		try (PrintStream outStream = new PrintStream(out); PrintStream errStream = new PrintStream(err)) {
+			sqfFile.print(outStream, errStream);
+		}
+		
+		Entry entry = new Entry(
+			code,
+			out.toByteArray(),
+			err.toByteArray(),
+			sqfFile.getPreprocessor().getIncludedFiles()
+		);
+		
+		if (!options.isCheckPaths() && sqfFile.getPreProcessorError() == null) {
+			try {
+				write(buildKey(filePath, contents, options), entry);
+			} catch (IOException ex) {
+				Logger.getLogger(LintResultCache.class.getName()).log(Level.SEVERE, null, ex);
+			}
+		}
+		
+		return entry;
+	}
+	
+	/**
+	 * @return number of files loaded from cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+	
+	/**
+	 * @return number of files that had to be linted
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+	
+	/**
+	 * Writes entry to temporary file first, so other processes never see
+	 * partially written entry.
+	 */
+	private void write(String key, Entry entry) throws IOException {
+		Path temporary = Files.createTempFile(directory, key, ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+				entry.write(out);
+			}
+			Files.move(temporary, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+	
+	private boolean isValid(Entry entry) {
+		for (Map.Entry<Path, String> included : entry.includedFiles.entrySet()) {
+			String expected = included.getValue();
+			String current = currentHashes.computeIfAbsent(included.getKey(), this::hashOf);
+			
+			if (expected == null ? !current.isEmpty() : !expected.equals(current)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return hash of file contents, empty if the file is missing or can't be read
+	 */
+	private String hashOf(Path path) {
+		if (!Files.exists(path) || Files.isDirectory(path)) {
+			return "";
+		}
+		
+		try {
+			return SQFIncludeCache.hash(StreamUtil.fileToString(path.toString()));
+		} catch (IOException ex) {
+			return "";
+		}
+	}
+	
+	private String buildKey(String filePath, String contents, Options options) {
+		StringBuilder key = new StringBuilder();
+		key.append(VERSION).append('\n');
+		key.append(build).append('\n');
+		key.append(Paths.get(filePath).toAbsolutePath().normalize()).append('\n');
+		key.append(SQFIncludeCache.hash(contents)).append('\n');
+		
+		key.append(options.getOutputFormatter().getClass().getName()).append('\n');
+		key.append(options.isStopOnError())
+			.append(options.isSkipWarnings())
+			.append(options.isJsonOutput())
+			.append(options.isOutputVariables())
+			.append(options.isExitCodeEnabled())
+			.append(options.isWarningAsError())
+			.append(options.isContextSeparationEnabled())
+			.append('\n');
+		key.append(options.getRootPath()).append('\n');
+		key.append(new TreeMap<>(options.getIncludePaths())).append('\n');
+		key.append(new TreeSet<>(options.getIgnoredVariables())).append('\n');
+		key.append(new TreeSet<>(options.getSkippedVariables())).append('\n');
+		
+		return SQFIncludeCache.hash(key.toString());
+	}
+	
+	/**
+	 * Identifies build of the linter, results of different builds can differ.
+	 * 
+	 * @return hash of the jar the linter is running from
+	 */
+	private static String buildStamp() {
+		CodeSource source = LintResultCache.class.getProtectionDomain().getCodeSource();
+		if (source == null) {
+			return "";
+		}
+		
+		try {
+			Path location = Paths.get(source.getLocation().toURI());
+			if (!Files.isRegularFile(location)) {
+				return location.toString();
+			}
+			
+			return SQFIncludeCache.hash(Files.readAllBytes(location));
+		} catch (IOException | URISyntaxException | IllegalArgumentException ex) {
+			return "";
+		}
+	}
+	
+	/**
+	 * Printed results of single file.
+	 */
+	public static class Entry {
+		private final int code;
+		private final byte[] out;
+		private final byte[] err;
+		private final Map<Path, String> includedFiles;
+		
+		Entry(int code, byte[] out, byte[] err, Map<Path, String> includedFiles) {
+			this.code = code;
+			this.out = out;
+			this.err = err;
+			this.includedFiles = Collections.unmodifiableMap(new LinkedHashMap<>(includedFiles));
+		}
+		
+		/**
+		 * @return exit code of the file
+		 */
+		public int getCode() {
+			return code;
+		}
+		
+		byte[] getOut() {
+			return out;
+		}
+		
+		byte[] getErr() {
+			return err;
+		}
+		
+		/**
+		 * Prints results to standard outputs, the same way the file was printed.
+		 */
+		public void print() {
+			write(System.out, out);
+			write(System.err, err);
+		}
+		
+		private static void write(PrintStream stream, byte[] data) {
+			stream.write(data, 0, data.length);
+			stream.flush();
+		}
+		
+		void write(DataOutputStream stream) throws IOException {
+			stream.writeInt(VERSION);
+			stream.writeInt(code);
+			
+			stream.writeInt(includedFiles.size());
+			for (Map.Entry<Path, String> included : includedFiles.entrySet()) {
+				stream.writeUTF(included.getKey().toString());
+				stream.writeBoolean(included.getValue() != null);
+				if (included.getValue() != null) {
+					stream.writeUTF(included.getValue());
+				}
+			}
+			
+			writeBytes(stream, out);
+			writeBytes(stream, err);
+		}
+		
+		/**
+		 * @return entry or null if it was written by different version
+		 */
+		static Entry read(DataInputStream stream) throws IOException {
+			if (stream.readInt() != VERSION) {
+				return null;
+			}
+			
+			int code = stream.readInt();
+			
+			int count = stream.readInt();
+			Map<Path, String> includedFiles = new LinkedHashMap<>();
+			for (int i = 0; i < count; i++) {
+				Path path = Paths.get(stream.readUTF());
+				includedFiles.put(path, stream.readBoolean() ? stream.readUTF() : null);
+			}
+			
+			byte[] out = readBytes(stream);
+			byte[] err = readBytes(stream);
+			
+			return new Entry(code, out, err, includedFiles);
+		}
+		
+		private static void writeBytes(DataOutputStream stream, byte[] data) throws IOException {
+			stream.writeInt(data.length);
+			stream.write(data);
+		}
+		
+		private static byte[] readBytes(DataInputStream stream) throws IOException {
+			byte[] data = new byte[stream.readInt()];
+			stream.readFully(data);
+			return data;
+		}
+	}
+}
@@ -42,7 +42,11 @@ public class SQFLint {
 		options.addOption("s", "server", false, "run as server");
 		options.addOption("ip", "include-prefix", true, "adds include prefix override, format: prefix,path_to_use");
 		options.addOption("ncs", "no-context-separation", true, "disable context separation");
-		options.addOption("bl", "bench-logs", false, "output benchlog to stderr");
+		options.addOption("bl", "bench-logs", false, "output time spent in each phase to stderr");
+		options.addOption("sw", "server-workers", true, "number of files processed in parallel in server mode (defaults to number of cores)");
+		options.addOption("R", "recursive", false, "lint all sqf files in specified directories");
+		options.addOption("pl", "parallelism", true, "number of files linted in parallel in recursive mode (defaults to number of cores)");
+		options.addOption("c", "cache", true, "directory used to cache results of unchanged files in recursive mode");
 		
 		try {
 			cmd = cmdParser.parse(options, args);
@@ -51,9 +55,12 @@ public class SQFLint {
 			return;
 		}
 		
-		if (cmd.hasOption("h") || cmd.getArgs().length > 1) {
+		if (cmd.hasOption("h")
+			|| (cmd.getArgs().length > 1 && !cmd.hasOption("R"))
+			|| (cmd.getArgs().length == 0 && cmd.hasOption("R"))
+		) {
 			HelpFormatter formatter = new HelpFormatter();
-			formatter.printHelp("sqflint [OPTIONS] [FILE]", "Scans SQF file for errors and potential problems.", options, "Spaghetti");
+			formatter.printHelp("sqflint [OPTIONS] [FILE]\n       sqflint -R [OPTIONS] DIR...", "Scans SQF file for errors and potential problems.", options, "Spaghetti");
 			return;
 		}
 		
@@ -105,7 +112,31 @@ public class SQFLint {
 		linterOptions.setWarningAsError(cmd.hasOption("we"));
 		linterOptions.setCheckPaths(cmd.hasOption("cp"));
 		
-		if (!cmd.hasOption("s")) {
+		if (cmd.hasOption("R")) {
+			SQFLintBatch batch;
+			if (cmd.hasOption("pl")) {
+				int parallelism = parseCount(cmd.getOptionValue("pl"));
+				if (parallelism < 1) {
+					System.err.println("Invalid parallelism : " + cmd.getOptionValue("pl"));
+					System.exit(1);
+				}
+				
+				batch = new SQFLintBatch(linterOptions, parallelism);
+			} else {
+				batch = new SQFLintBatch(linterOptions);
+			}
+			
+			if (cmd.hasOption("c")) {
+				try {
+					batch.setCache(new LintResultCache(Paths.get(cmd.getOptionValue("c"))));
+				} catch (IOException ex) {
+					Logger.getLogger(SQFLint.class.getName()).log(Level.SEVERE, null, ex);
+					return;
+				}
+			}
+			
+			System.exit(batch.start(cmd.getArgs()));
+		} else if (!cmd.hasOption("s")) {
 			
 			InputStream contents = null;
 			String filename = null;
@@ -141,11 +172,37 @@ public class SQFLint {
 				filename
 			);
 
-			System.exit(sqfFile.process());
+			int result = sqfFile.process();
+			sqfFile.getTrace().report(filename);
+
+			System.exit(result);
 		} else {
-			SQFLintServer server = new SQFLintServer(linterOptions);
+			SQFLintServer server;
+			if (cmd.hasOption("sw")) {
+				int workers = parseCount(cmd.getOptionValue("sw"));
+				if (workers < 1) {
+					System.err.println("Invalid server workers count : " + cmd.getOptionValue("sw"));
+					System.exit(1);
+				}
+				
+				server = new SQFLintServer(linterOptions, workers);
+			} else {
+				server = new SQFLintServer(linterOptions);
+			}
 			server.start();
 		}
 	}
 	
+	/**
+	 * @param value option value
+	 * @return parsed number or 0 if value isn't a number
+	 */
+	private static int parseCount(String value) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException ex) {
+			return 0;
+		}
+	}
+	
 }
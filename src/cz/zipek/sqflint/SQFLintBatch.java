@@ -0,0 +1,213 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint;
+
+import cz.zipek.sqflint.linter.Linter;
+import cz.zipek.sqflint.linter.Options;
+import cz.zipek.sqflint.linter.SqfFile;
+import cz.zipek.sqflint.output.JSONOutput;
+import cz.zipek.sqflint.output.OutputFormatter;
+import cz.zipek.sqflint.output.ServerOutput;
+import cz.zipek.sqflint.output.StreamUtil;
+import cz.zipek.sqflint.output.TextOutput;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lints all sqf files in specified directories in single process.
+ * Files are processed in parallel, each file is printed as soon as it's done.
+ * When cache is set, results of unchanged files are printed from the cache.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class SQFLintBatch {
+	private final Options options;
+	private final ForkJoinPool pool;
+
+	private final Object outputLock = new Object();
+	
+	private LintResultCache cache;
+
+	public SQFLintBatch(Options options) {
+		this(options, Runtime.getRuntime().availableProcessors());
+	}
+
+	public SQFLintBatch(Options options, int parallelism) {
+		this.options = options;
+		this.pool = new ForkJoinPool(Math.max(1, parallelism));
+	}
+
+	/**
+	 * @param cache cache of results from previous runs, can be null
+	 */
+	public void setCache(LintResultCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Lints all sqf files found in specified paths.
+	 *
+	 * @param paths directories (searched recursively) or files
+	 * @return CODE_ERR if any of the files returned CODE_ERR, CODE_OK otherwise
+	 */
+	public int start(String[] paths) {
+		List<Path> files;
+		try {
+			files = findFiles(paths);
+		} catch (IOException ex) {
+			Logger.getLogger(SQFLintBatch.class.getName()).log(Level.SEVERE, null, ex);
+			return Linter.CODE_ERR;
+		}
+
+		List<ForkJoinTask<Integer>> tasks = new ArrayList<>();
+		for (Path file : files) {
+			tasks.add(pool.submit(() -> lint(file)));
+		}
+
+		int result = Linter.CODE_OK;
+		for (ForkJoinTask<Integer> task : tasks) {
+			if (task.join() != Linter.CODE_OK) {
+				result = Linter.CODE_ERR;
+			}
+		}
+
+		pool.shutdown();
+
+		if (cache != null && options.isBenchLogs()) {
+			System.err.println("[cache] hits=" + cache.getHits() + " misses=" + cache.getMisses());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Lists sqf files in specified paths, sorted by path.
+	 *
+	 * @param paths
+	 * @return
+	 * @throws IOException
+	 */
+	private List<Path> findFiles(String[] paths) throws IOException {
+		List<Path> files = new ArrayList<>();
+
+		for (String path : paths) {
+			Path root = Paths.get(path);
+			if (Files.isDirectory(root)) {
+				try (Stream<Path> walk = Files.walk(root)) {
+					files.addAll(walk
+						.filter(p -> Files.isRegularFile(p))
+						.filter(p -> p.getFileName().toString().toLowerCase().endsWith(".sqf"))
+						.sorted()
+						.collect(Collectors.toList())
+					);
+				}
+			} else {
+				files.add(root);
+			}
+		}
+
+		return files;
+	}
+
+	private int lint(Path file) {
+		String filePath = file.toString();
+
+		try {
+			Options fileOptions = new Options(options, createOutput(filePath));
+			if (options.getRootPath() == null) {
+				fileOptions.setRootPath(file.toAbsolutePath().getParent().toString());
+			}
+
+			String contents = StreamUtil.fileToString(filePath);
+
+			if (cache != null) {
+				LintResultCache.Entry cached = cache.get(filePath, contents, fileOptions);
+				if (cached != null) {
+					synchronized (outputLock) {
+						cached.print();
+					}
+					return cached.getCode();
+				}
+			}
+
+			SqfFile sqfFile = new SqfFile(
+				fileOptions,
+				contents,
+				filePath
+			);
+
+			int result = sqfFile.process();
+
+			if (cache != null) {
+				LintResultCache.Entry entry = cache.put(filePath, contents, fileOptions, sqfFile, result);
+				synchronized (outputLock) {
+					entry.print();
+					if (options.isBenchLogs()) {
+						sqfFile.getTrace().report(filePath);
+					}
+				}
+				return result;
+			}
+
+			// Keep output of single file together
+			synchronized (outputLock) {
+				sqfFile.print();
+			}
+
+			return result;
+		} catch (FileNotFoundException ex) {
+			Logger.getLogger(SQFLintBatch.class.getName()).log(Level.SEVERE, filePath + " not found", ex);
+		} catch (Exception ex) {
+			Logger.getLogger(SQFLintBatch.class.getName()).log(Level.SEVERE, "Error when parsing {0}", filePath);
+			Logger.getLogger(SQFLintBatch.class.getName()).log(Level.SEVERE, null, ex);
+		}
+
+		return Linter.CODE_ERR;
+	}
+
+	/**
+	 * Creates output for single file. Messages have to include file name,
+	 * otherwise it wouldn't be possible to tell which file they belong to.
+	 *
+	 * @param filePath
+	 * @return
+	 */
+	private OutputFormatter createOutput(String filePath) {
+		if (options.getOutputFormatter() instanceof JSONOutput) {
+			return new ServerOutput(filePath);
+		}
+		return new TextOutput(filePath);
+	}
+}
@@ -25,40 +25,153 @@ package cz.zipek.sqflint;
 
 import cz.zipek.sqflint.linter.Options;
 import cz.zipek.sqflint.linter.SqfFile;
-import cz.zipek.sqflint.output.LogUtil;
+import cz.zipek.sqflint.output.BinaryOutput;
+import cz.zipek.sqflint.output.PhaseTrace;
 import cz.zipek.sqflint.output.ServerOutput;
 import cz.zipek.sqflint.output.StreamUtil;
+import cz.zipek.sqflint.preprocessor.SQFIncludeCache;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONStringer;
 
 /**
  * Language server allowing to feed single process with multiple files.
+ * 
+ * Files sent with contents are kept as open documents. Client can then send
+ * only the changes ({"type":"change"} with list of edited ranges) and close
+ * the document when it's no longer needed ({"type":"close"}). Open documents
+ * are linted incrementally, only statements after the first change are
+ * parsed again.
+ * 
+ * Clients that never close their documents are common, so only
+ * {@link #MAX_DOCUMENTS} most recently used documents are kept. Changes of
+ * document that was dropped (or never opened) are answered with
+ * {"type":"error"} and the message id, client has to send full contents
+ * again.
+ * 
+ * Message {"type":"batch"} lints list of files at once, see
+ * {@link #submitBatch(JSONObject)}.
+ * 
+ * Message {"type":"stats"} is answered right away with latency percentiles
+ * of processed messages, queue depth, cache hit counts and heap usage.
+ * 
+ * Responses are JSON lines by default. Client can switch to binary frames
+ * described in {@link BinaryOutput} by sending {"type":"protocol",
+ * "format":"binary"} (and back with "format":"json"). Server finishes
+ * messages received before the switch, acknowledges it with the same
+ * message in the old format and uses the new format for every following
+ * response.
+ * 
  * @author Jan Zípek (jan at zipek.cz)
  */
 public class SQFLintServer {
+	/**
+	 * Maximum number of open documents kept in memory.
+	 */
+	public static final int MAX_DOCUMENTS = 64;
+	
 	private final Options options;
+	private final ExecutorService workers;
+	
+	// Only accessed from the thread reading messages, ordered by last use
+	private final Map<String, Document> documents = new LinkedHashMap<String, Document>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Document> eldest) {
+			return size() > MAX_DOCUMENTS;
+		}
+	};
+	
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger pending = new AtomicInteger();
+	private final Object idle = new Object();
+	
+	// Session of binary protocol, null when responses are sent as JSON
+	private volatile BinaryOutput.Session binary;
+	private final LongAdder processed = new LongAdder();
+	private final LongAdder templateHits = new LongAdder();
+	private final LongAdder templateMisses = new LongAdder();
+	private final LatencyHistogram queueLatency = new LatencyHistogram();
+	private final LatencyHistogram totalLatency = new LatencyHistogram();
+	private final Map<PhaseTrace.Phase, LatencyHistogram> phaseLatency = new EnumMap<>(PhaseTrace.Phase.class);
 	
 	public SQFLintServer(Options options) {
+		this(options, Runtime.getRuntime().availableProcessors());
+	}
+	
+	public SQFLintServer(Options options, int workerCount) {
 		this.options = options;
+		this.workers = Executors.newFixedThreadPool(Math.max(1, workerCount));
+		
+		for (PhaseTrace.Phase phase : PhaseTrace.Phase.values()) {
+			phaseLatency.put(phase, new LatencyHistogram());
+		}
 	}
 	
+	/**
+	 * Reads client messages and hands them over to the worker pool.
+	 * Responses are sent as soon as each file is done, so they can arrive
+	 * in different order than the requests. Clients can pair them using
+	 * optional message id, which is echoed back in the response.
+	 */
 	public void start() {
 		try {
 			BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
 
 			while (true) {
+				String line = br.readLine();
+				if (line == null) {
+					break;
+				}
+				
 				try {
-					if (!processMessage(new JSONObject(br.readLine()))) {
+					JSONObject message = new JSONObject(line);
+					
+					String type = message.optString("type", null);
+					
+					if ("exit".equals(type)) {
 						break;
 					}
+					
+					if ("close".equals(type)) {
+						documents.remove(message.getString("file"));
+						continue;
+					}
+					
+					if ("stats".equals(type)) {
+						printStats(message);
+						continue;
+					}
+					
+					if ("protocol".equals(type)) {
+						switchProtocol(message);
+						continue;
+					}
+					
+					if ("batch".equals(type)) {
+						submitBatch(message);
+						continue;
+					}
+					
+					submit(message, null);
 				} catch (JSONException ex) {
 					Logger.getLogger(SQFLintServer.class.getName()).log(Level.SEVERE, null, ex);
 					System.err.println("Error parsing client message");
@@ -66,25 +179,332 @@ public class SQFLintServer {
 			}
 		}  catch (IOException ex) {
 			Logger.getLogger(SQFLintServer.class.getName()).log(Level.SEVERE, null, ex);
+		} finally {
+			shutdown();
 		}
 	}
 	
-	private boolean processMessage(JSONObject message) {
-		LogUtil.benchLog(options, this, "/ClientMessage", "Client message received");
+	/**
+	 * Hands single file message over to the worker pool.
+	 * 
+	 * @param message file message
+	 * @param done called after the response is sent, can be null. When set,
+	 * file that can't be linted is answered with {"type":"error"}
+	 * @return false if the message was ignored
+	 */
+	private boolean submit(JSONObject message, Runnable done) {
+		// Edits have to be applied in the order they came in
+		Document document = null;
+		if ("change".equals(message.optString("type", null))) {
+			if (!documents.containsKey(message.getString("file"))) {
+				respondError(message, "File isn't open, send its full contents");
+				if (done != null) {
+					done.run();
+				}
+				return true;
+			}
+			
+			document = applyChanges(message);
+			if (document == null) {
+				return false;
+			}
+		} else if (message.has("contents")) {
+			document = documents.computeIfAbsent(message.getString("file"), (k) -> new Document());
+			document.update(message.getString("contents"), message.optLong("version", -1));
+		}
+		
+		Document target = document;
+		long revision = document != null ? document.getRevision() : 0;
+		String contents = document != null ? document.getContents() : null;
+		
+		long submitted = System.nanoTime();
+		queued.incrementAndGet();
+		pending.incrementAndGet();
+		
+		Runnable task = () -> {
+			queued.decrementAndGet();
+			queueLatency.record(System.nanoTime() - submitted);
+			
+			try {
+				boolean answered = processMessage(message, target, revision, contents);
+				
+				if (done != null) {
+					try {
+						if (!answered) {
+							respondError(message, "Failed to lint file");
+						}
+					} finally {
+						done.run();
+					}
+				}
+			} finally {
+				finishTask();
+			}
+		};
 		
-		String filePath = null; // declare here to use in catch block
 		try {
-			if (message.has("type") && "exit".equals(message.getString("type"))) {
-				return false;
+			// Lints of open document resume from each other
+			if (target != null) {
+				target.execute(task, workers);
+			} else {
+				workers.execute(task);
 			}
-
+		} catch (RejectedExecutionException ex) {
+			queued.decrementAndGet();
+			finishTask();
+			throw ex;
+		}
+		
+		return true;
+	}
+	
+	private void finishTask() {
+		if (pending.decrementAndGet() == 0) {
+			synchronized (idle) {
+				idle.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Submits every file of batch message as separate message, so files
+	 * are spread over all workers. Every file is answered as soon as it's
+	 * done, the last one is followed by {"type":"batchComplete"} with
+	 * number of files in the batch. Files that can't be linted are answered
+	 * with {"type":"error"}, so the batch is always completed.
+	 * 
+	 * Files are either paths or objects with the same keys as single file
+	 * message. Id and options of the batch are used for files that don't
+	 * specify their own.
+	 * 
+	 * @param message batch message
+	 */
+	private void submitBatch(JSONObject message) {
+		JSONArray files = message.optJSONArray("files");
+		if (files == null) {
+			respondError(message, "Batch has no list of files");
+			files = new JSONArray();
+		}
+		
+		int count = files.length();
+		AtomicInteger remaining = new AtomicInteger(count + 1);
+		Runnable done = () -> {
+			if (remaining.decrementAndGet() == 0) {
+				JSONStringer response = new JSONStringer();
+				response.object();
+				if (message.has("id")) {
+					response.key("id").value(message.get("id"));
+				}
+				response
+					.key("type").value("batchComplete")
+					.key("files").value(count)
+					.endObject();
+				respond(response.toString());
+			}
+		};
+		
+		try {
+			for (int i = 0; i < count; i++) {
+				JSONObject fileMessage = new JSONObject();
+				try {
+					if (files.get(i) instanceof JSONObject) {
+						fileMessage = new JSONObject(files.getJSONObject(i).toString());
+					} else {
+						fileMessage.put("file", files.getString(i));
+					}
+					
+					if (!fileMessage.has("id") && message.has("id")) {
+						fileMessage.put("id", message.get("id"));
+					}
+					if (!fileMessage.has("options") && message.has("options")) {
+						fileMessage.put("options", message.get("options"));
+					}
+					
+					if (!submit(fileMessage, done)) {
+						respondError(fileMessage, "Change is outdated");
+						done.run();
+					}
+				} catch (RuntimeException ex) {
+					Logger.getLogger(SQFLintServer.class.getName()).log(Level.SEVERE, null, ex);
+					
+					if (!fileMessage.has("id") && message.has("id")) {
+						fileMessage.put("id", message.get("id"));
+					}
+					respondError(fileMessage, String.valueOf(ex.getMessage()));
+					done.run();
+				}
+			}
+		} finally {
+			// Batch is only complete once all files were submitted
+			done.run();
+		}
+	}
+	
+	/**
+	 * Answers message that couldn't be processed.
+	 * 
+	 * @param message message that failed
+	 * @param error description of the problem
+	 */
+	private void respondError(JSONObject message, String error) {
+		JSONStringer response = new JSONStringer();
+		response.object();
+		if (message.has("id")) {
+			response.key("id").value(message.get("id"));
+		}
+		if (message.opt("file") instanceof String) {
+			response.key("file").value(message.getString("file"));
+		}
+		response
+			.key("type").value("error")
+			.key("message").value(error)
+			.endObject();
+		respond(response.toString());
+	}
+	
+	/**
+	 * Lets the workers finish already queued messages and stops them.
+	 */
+	private void shutdown() {
+		workers.shutdown();
+		try {
+			workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Logger.getLogger(SQFLintServer.class.getName()).log(Level.SEVERE, null, ex);
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Switches format of responses once all previous messages are answered.
+	 * 
+	 * @param message protocol request
+	 */
+	private void switchProtocol(JSONObject message) {
+		String format = message.optString("format", "json");
+		if (!"json".equals(format) && !"binary".equals(format)) {
+			System.err.println("Unknown protocol format: " + format);
+			return;
+		}
+		
+		synchronized (idle) {
+			while (pending.get() > 0) {
+				try {
+					idle.wait();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+		
+		JSONStringer response = new JSONStringer();
+		response.object();
+		if (message.has("id")) {
+			response.key("id").value(message.get("id"));
+		}
+		response
+			.key("type").value("protocol")
+			.key("format").value(format)
+			.endObject();
+		respond(response.toString());
+		
+		binary = "binary".equals(format) ? new BinaryOutput.Session() : null;
+	}
+	
+	/**
+	 * Sends response other than lint result in current format.
+	 * 
+	 * @param json 
+	 */
+	private void respond(String json) {
+		BinaryOutput.Session session = binary;
+		if (session != null) {
+			session.printJSON(System.out, json);
+			return;
+		}
+		
+		// Responses of files are written in parts while holding the lock
+		synchronized (System.out) {
+			System.out.println(json);
+			System.out.flush();
+		}
+	}
+	
+	/**
+	 * Applies changes from client message to open document.
+	 * Ranges use zero based lines and characters.
+	 * 
+	 * @param message
+	 * @return updated document or null if the change is outdated
+	 */
+	private Document applyChanges(JSONObject message) {
+		Document document = documents.get(message.getString("file"));
+		
+		long version = message.optLong("version", -1);
+		if (version >= 0 && version <= document.getVersion()) {
+			// Outdated change, newer version was already received
+			return null;
+		}
+		
+		StringBuilder contents = new StringBuilder(document.getContents());
+		JSONArray changes = message.getJSONArray("changes");
+		for (int i = 0; i < changes.length(); i++) {
+			JSONObject change = changes.getJSONObject(i);
+			String text = change.getString("text");
+			
+			if (!change.has("range")) {
+				contents.setLength(0);
+				contents.append(text);
+				continue;
+			}
+			
+			JSONObject range = change.getJSONObject("range");
+			int start = offsetOf(contents, range.getJSONObject("start"));
+			int end = offsetOf(contents, range.getJSONObject("end"));
+			contents.replace(start, Math.max(start, end), text);
+		}
+		
+		document.update(contents.toString(), version);
+		
+		return document;
+	}
+	
+	private int offsetOf(CharSequence contents, JSONObject position) {
+		int line = position.getInt("line");
+		int offset = 0;
+		
+		while (line > 0 && offset < contents.length()) {
+			if (contents.charAt(offset++) == '\n') {
+				line--;
+			}
+		}
+		
+		return Math.min(contents.length(), offset + position.getInt("character"));
+	}
+	
+	/**
+	 * Lints file from message and prints the response.
+	 * 
+	 * @return false if the file couldn't be linted and nothing was printed
+	 */
+	private boolean processMessage(JSONObject message, Document document, long revision, String contents) {
+		long started = System.nanoTime();
+		
+		String filePath = null; // declare here to use in catch block
+		try {
 			// read filepath
 			filePath = message.getString("file");
 			
-			LogUtil.benchLog(options, this, filePath, "Starting");
-			
 			// Apply file specific options
-			Options fileOptions = new Options(options, new ServerOutput(filePath));
+			BinaryOutput.Session session = binary;
+			Options fileOptions = new Options(
+				options,
+				session != null ?
+					new BinaryOutput(session, filePath, message.opt("id"))
+					:
+					new ServerOutput(filePath, message.opt("id"))
+			);
 			fileOptions.setRootPath(Paths.get(filePath).toAbsolutePath().getParent().toString());
 			fileOptions.getSkippedVariables().clear();
 
@@ -94,27 +514,118 @@ public class SQFLintServer {
 
 			SqfFile sqfFile = new SqfFile(
 				fileOptions,
-				message.has("contents") ?
-					message.getString("contents")
+				contents != null ?
+					contents
 					:
 					StreamUtil.streamToString(new FileInputStream(filePath)),
-				filePath
+				filePath,
+				fileOptions.isBenchLogs() ? PhaseTrace.create(fileOptions) : PhaseTrace.withoutTokens()
 			);
 
-			sqfFile.process();
-
-			fileOptions.getOutputFormatter().print(sqfFile);
-
-			LogUtil.benchLog(options, this, filePath, "Done");
-
+			if (document != null) {
+				String optionsKey = String.valueOf(message.opt("options"));
+				sqfFile.process(document.getLinted(optionsKey));
+				sqfFile.print();
+				
+				// Next lint can only resume from file that won't change
+				document.setLinted(sqfFile, optionsKey, revision);
+			} else {
+				sqfFile.process();
+				sqfFile.print();
+			}
+			
+			templateHits.add(sqfFile.getPreprocessor().getTemplateHits());
+			templateMisses.add(sqfFile.getPreprocessor().getTemplateMisses());
+			
+			for (PhaseTrace.Phase phase : PhaseTrace.Phase.values()) {
+				if (sqfFile.getTrace().getCount(phase) > 0) {
+					phaseLatency.get(phase).record(sqfFile.getTrace().getTime(phase));
+				}
+			}
+			totalLatency.record(System.nanoTime() - started);
+			
+			return true;
 		} catch (JSONException ex) {
 			Logger.getLogger(SQFLintServer.class.getName()).log(Level.SEVERE, null, ex);
 		} catch (Exception ex) {
 			Logger.getLogger(SQFLintServer.class.getName()).log(Level.SEVERE, "Error when parsing {0}", filePath);
 			Logger.getLogger(SQFLintServer.class.getName()).log(Level.SEVERE, null, ex);
+		} finally {
+			processed.increment();
 		}
 		
-		return true;
+		return false;
+	}
+	
+	/**
+	 * Prints server statistics. Latencies are in milliseconds.
+	 * 
+	 * @param message stats request
+	 */
+	private void printStats(JSONObject message) {
+		SQFIncludeCache includeCache = SQFIncludeCache.getShared();
+		Runtime runtime = Runtime.getRuntime();
+		
+		try {
+			JSONStringer response = new JSONStringer();
+			response.object();
+			
+			if (message.has("id")) {
+				response.key("id").value(message.get("id"));
+			}
+			
+			response
+				.key("type").value("stats")
+				.key("requests").value(processed.sum())
+				.key("queue").value(queued.get());
+			
+			response.key("latency").object();
+			writeLatency(response, "queue", queueLatency);
+			for (Map.Entry<PhaseTrace.Phase, LatencyHistogram> phase : phaseLatency.entrySet()) {
+				writeLatency(response, phase.getKey().name().toLowerCase(), phase.getValue());
+			}
+			writeLatency(response, "total", totalLatency);
+			response.endObject();
+			
+			writeCache(response, "includeCache", includeCache.getHits(), includeCache.getMisses());
+			response.key("includeCacheSize").value(includeCache.size());
+			writeCache(response, "macroCache", templateHits.sum(), templateMisses.sum());
+			
+			response.key("heap").object()
+				.key("used").value(runtime.totalMemory() - runtime.freeMemory())
+				.key("committed").value(runtime.totalMemory())
+				.key("max").value(runtime.maxMemory())
+				.endObject();
+			
+			respond(response.endObject().toString());
+		} catch (JSONException ex) {
+			Logger.getLogger(SQFLintServer.class.getName()).log(Level.SEVERE, null, ex);
+		}
+	}
+	
+	private void writeLatency(JSONStringer response, String name, LatencyHistogram histogram) {
+		response.key(name).object()
+			.key("count").value(histogram.getCount())
+			.key("p50").value(toMillis(histogram.getPercentile(50)))
+			.key("p95").value(toMillis(histogram.getPercentile(95)))
+			.key("p99").value(toMillis(histogram.getPercentile(99)))
+			.key("max").value(toMillis(histogram.getMax()))
+			.endObject();
+	}
+	
+	/**
+	 * Converts nanoseconds to milliseconds, rounded to microseconds.
+	 */
+	private static double toMillis(long nanos) {
+		return Math.round(nanos / 1e3) / 1e3;
+	}
+	
+	private void writeCache(JSONStringer response, String name, long hits, long misses) {
+		response.key(name).object()
+			.key("hits").value(hits)
+			.key("misses").value(misses)
+			.key("hitRate").value(hits + misses > 0 ? (double)hits / (hits + misses) : 0)
+			.endObject();
 	}
 	
 	private void applyOptions(JSONObject data, Options fileOptions) {
@@ -153,4 +664,101 @@ public class SQFLintServer {
 		}
 	}
 	
+	/**
+	 * File opened by client, together with its last linted version.
+	 * Lints of the document run one after another in the order they were
+	 * submitted, because every lint resumes from the previous one.
+	 */
+	private static class Document {
+		private String contents;
+		private long version = -1;
+		private long revision = 0;
+		
+		private SqfFile linted;
+		private String lintedOptions;
+		private long lintedRevision = -1;
+		
+		private final Queue<Runnable> tasks = new ArrayDeque<>();
+		private boolean running = false;
+		
+		/**
+		 * Runs lint of this document once the previous lints are done.
+		 * 
+		 * @param task lint to run
+		 * @param workers pool to run the lints in
+		 */
+		void execute(Runnable task, ExecutorService workers) {
+			synchronized (this) {
+				tasks.add(task);
+				if (running) {
+					return;
+				}
+				running = true;
+			}
+			
+			try {
+				workers.execute(this::runTasks);
+			} catch (RejectedExecutionException ex) {
+				synchronized (this) {
+					tasks.remove(task);
+					running = false;
+				}
+				throw ex;
+			}
+		}
+		
+		private void runTasks() {
+			while (true) {
+				Runnable task;
+				synchronized (this) {
+					task = tasks.poll();
+					if (task == null) {
+						running = false;
+						return;
+					}
+				}
+				
+				try {
+					task.run();
+				} catch (RuntimeException ex) {
+					Logger.getLogger(SQFLintServer.class.getName()).log(Level.SEVERE, null, ex);
+				}
+			}
+		}
+		
+		synchronized void update(String contents, long version) {
+			this.contents = contents;
+			this.version = Math.max(this.version, version);
+			this.revision++;
+		}
+		
+		synchronized String getContents() {
+			return contents;
+		}
+		
+		synchronized long getVersion() {
+			return version;
+		}
+		
+		synchronized long getRevision() {
+			return revision;
+		}
+		
+		/**
+		 * @param options options used for linting
+		 * @return last linted file if it was linted with the same options
+		 */
+		synchronized SqfFile getLinted(String options) {
+			return options.equals(lintedOptions) ? linted : null;
+		}
+		
+		synchronized void setLinted(SqfFile file, String options, long revision) {
+			// Results can come in different order than the changes
+			if (revision > lintedRevision) {
+				this.linted = file;
+				this.lintedOptions = options;
+				this.lintedRevision = revision;
+			}
+		}
+	}
 }
@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint;
+
+import cz.zipek.sqflint.linter.Options;
+import cz.zipek.sqflint.linter.SqfFile;
+import cz.zipek.sqflint.output.StreamUtil;
+import cz.zipek.sqflint.output.VoidOutput;
+import cz.zipek.sqflint.preprocessor.SQFIncludeCache;
+import cz.zipek.sqflint.preprocessor.SQFPreprocessor;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Lints files in-process and returns results instead of printing them.
+ * 
+ * Engine owns everything that can be shared between files: command table
+ * (part of the default options), include cache and worker threads. Single
+ * engine can be used from any number of threads, files are linted in
+ * parallel on the engine workers.
+ * 
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class SqfLintEngine implements AutoCloseable {
+	private final Options defaults;
+	private final SQFIncludeCache includeCache = new SQFIncludeCache();
+	private final ExecutorService workers;
+	
+	public SqfLintEngine() throws IOException {
+		this(new Options());
+	}
+	
+	public SqfLintEngine(Options defaults) {
+		this(defaults, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * @param defaults options used for every file, output formatter is ignored
+	 * @param parallelism number of files linted at once
+	 */
+	public SqfLintEngine(Options defaults, int parallelism) {
+		this.defaults = new Options(defaults, new VoidOutput());
+		this.workers = Executors.newFixedThreadPool(Math.max(1, parallelism), (task) -> {
+			Thread thread = new Thread(task, "sqflint-engine");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Lints file using default options.
+	 * 
+	 * @param path path of the file, used to resolve includes and in messages
+	 * @param content contents of the file, null to read it from path
+	 * @return result, completed exceptionally when the file can't be read
+	 */
+	public CompletableFuture<LintResult> lint(String path, String content) {
+		return lint(path, content, null);
+	}
+	
+	/**
+	 * Lints file on engine workers.
+	 * Root path defaults to directory of the file, same as in server mode.
+	 * 
+	 * @param path path of the file, used to resolve includes and in messages
+	 * @param content contents of the file, null to read it from path
+	 * @param overrides changes applied to copy of default options, can be null
+	 * @return result, completed exceptionally when the file can't be read
+	 */
+	public CompletableFuture<LintResult> lint(String path, String content, Consumer<Options> overrides) {
+		return CompletableFuture.supplyAsync(() -> process(path, content, overrides), workers);
+	}
+	
+	private LintResult process(String path, String content, Consumer<Options> overrides) {
+		Options fileOptions = new Options(defaults, new VoidOutput());
+		if (fileOptions.getRootPath() == null && path != null) {
+			Path parent = Paths.get(path).toAbsolutePath().getParent();
+			if (parent != null) {
+				fileOptions.setRootPath(parent.toString());
+			}
+		}
+		
+		if (overrides != null) {
+			overrides.accept(fileOptions);
+		}
+		
+		if (content == null) {
+			try {
+				content = StreamUtil.fileToString(path);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+		
+		SqfFile sqfFile = new SqfFile(fileOptions, content, path);
+		sqfFile.setPreprocessor(new SQFPreprocessor(fileOptions, includeCache));
+		
+		int code = sqfFile.process();
+		
+		return new LintResult(sqfFile, code);
+	}
+	
+	/**
+	 * @return cache of included files used by this engine
+	 */
+	public SQFIncludeCache getIncludeCache() {
+		return includeCache;
+	}
+	
+	/**
+	 * Stops the workers once already submitted files are linted.
+	 */
+	@Override
+	public void close() {
+		workers.shutdown();
+		try {
+			workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
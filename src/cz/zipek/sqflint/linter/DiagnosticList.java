@@ -0,0 +1,206 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.linter;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * List of problems found in a file.
+ * Removed problems are only marked as removed, so removal doesn't shift
+ * the rest of the list. Removed slots are reused when the list grows,
+ * or when compact is called once the file is linted.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ * @param <T> problem type
+ */
+public class DiagnosticList<T extends SQFParseException> extends AbstractList<T> implements RandomAccess {
+	private SQFParseException[] items = new SQFParseException[16];
+	
+	/**
+	 * Slot of every problem in this list, problems are compared by identity.
+	 */
+	private final Map<SQFParseException, Integer> slots = new IdentityHashMap<>();
+	
+	/**
+	 * Number of used slots, including removed problems.
+	 */
+	private int end;
+	
+	/**
+	 * Number of problems that weren't removed.
+	 */
+	private int size;
+
+	@Override
+	public boolean add(T item) {
+		if (end == items.length) {
+			// Only reuse removed slots if there is enough of them
+			if (size <= end / 2) {
+				compact();
+			} else {
+				items = Arrays.copyOf(items, items.length * 2);
+			}
+		}
+		
+		slots.put(item, end);
+		items[end++] = item;
+		size++;
+		modCount++;
+		
+		return true;
+	}
+
+	/**
+	 * Removes problem in constant time. Only problems added to this list
+	 * can be removed, compared by identity.
+	 *
+	 * @param item problem to remove
+	 * @return if the problem was removed
+	 */
+	@Override
+	public boolean remove(Object item) {
+		Integer slot = slots.remove(item);
+		if (slot == null) {
+			return false;
+		}
+		
+		items[slot] = null;
+		size--;
+		modCount++;
+		
+		return true;
+	}
+
+	/**
+	 * Returns problem at specified index. This is constant time unless
+	 * problems were removed since the list was last compacted.
+	 *
+	 * @param index index of problem
+	 * @return problem
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		
+		if (size == end) {
+			return (T)items[index];
+		}
+		
+		int remaining = index;
+		for (int i = 0; i < end; i++) {
+			if (items[i] != null && remaining-- == 0) {
+				return (T)items[i];
+			}
+		}
+		
+		throw new IllegalStateException("Removed problems weren't counted.");
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private int slot = skip(0);
+			private final int expectedModCount = modCount;
+			
+			@Override
+			public boolean hasNext() {
+				return slot < end;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public T next() {
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				if (slot >= end) {
+					throw new NoSuchElementException();
+				}
+				
+				T item = (T)items[slot];
+				slot = skip(slot + 1);
+				
+				return item;
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(items, 0, end, null);
+		slots.clear();
+		
+		end = 0;
+		size = 0;
+		modCount++;
+	}
+
+	/**
+	 * Moves remaining problems to the start, keeping their order.
+	 * Doesn't change contents of the list, only makes reads constant time.
+	 */
+	public void compact() {
+		if (size == end) {
+			return;
+		}
+		
+		int target = 0;
+		for (int i = 0; i < end; i++) {
+			SQFParseException item = items[i];
+			if (item != null) {
+				slots.put(item, target);
+				items[target++] = item;
+			}
+		}
+		
+		Arrays.fill(items, target, end, null);
+		end = target;
+	}
+	
+	/**
+	 * @param slot first slot to check
+	 * @return first slot from specified one that wasn't removed
+	 */
+	private int skip(int slot) {
+		while (slot < end && items[slot] == null) {
+			slot++;
+		}
+		return slot;
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.linter;
+
+import cz.zipek.sqflint.parser.Token;
+import cz.zipek.sqflint.sqf.SQFContext;
+import java.util.List;
+
+/**
+ * State of linter after top level statement separator.
+ * Analysis only moves forward, so everything linter knew at this point
+ * depends only on the text before it. When the text before checkpoint
+ * doesn't change, linting can continue from here instead of from the start.
+ *
+ * Only counts are stored, variable state is reconstructed from token
+ * positions (tokens of later statements always follow the separator).
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class LintCheckpoint {
+	private final int line;
+	private final int column;
+	private final int errors;
+	private final int warnings;
+	private final int children;
+
+	public LintCheckpoint(int line, int column, int errors, int warnings, int children) {
+		this.line = line;
+		this.column = column;
+		this.errors = errors;
+		this.warnings = warnings;
+		this.children = children;
+	}
+
+	/**
+	 * @param line
+	 * @param column
+	 * @return if this checkpoint lies before specified position
+	 */
+	public boolean isBefore(int line, int column) {
+		return this.line < line || (this.line == line && this.column < column);
+	}
+
+	/**
+	 * Copies variables (as they were at this checkpoint) of source context
+	 * to target context.
+	 *
+	 * @param source context of previous linter
+	 * @param target context of resumed linter
+	 */
+	void restoreVariables(SQFContext source, SQFContext target) {
+		source.getVariables().forEach((ident, var) -> {
+			int usage = countBefore(var.usage);
+			int definitions = countBefore(var.definitions);
+
+			// Variable was first used after this checkpoint
+			if (usage == 0 && definitions == 0) {
+				return;
+			}
+
+			SQFVariable restored = new SQFVariable(var.name);
+			restored.isPrivate = var.isPrivate;
+			restored.usage.addAll(var.usage.subList(0, usage));
+			restored.definitions.addAll(var.definitions.subList(0, definitions));
+			restored.comments.addAll(var.comments.subList(0, definitions));
+
+			target.restoreVariable(ident, restored);
+		});
+	}
+
+	/**
+	 * Adds children contexts created before this checkpoint.
+	 *
+	 * @param source context of previous linter
+	 * @param target context of resumed linter
+	 */
+	void restoreChildren(SQFContext source, SQFContext target) {
+		source.getChildren().subList(0, children).forEach(target::addChild);
+	}
+
+	private int countBefore(List<Token> tokens) {
+		int count = 0;
+		while (count < tokens.size() && !isBefore(tokens.get(count).beginLine, tokens.get(count).beginColumn)) {
+			count++;
+		}
+		return count;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getColumn() {
+		return column;
+	}
+
+	public int getErrors() {
+		return errors;
+	}
+
+	public int getWarnings() {
+		return warnings;
+	}
+
+	public int getChildren() {
+		return children;
+	}
+}
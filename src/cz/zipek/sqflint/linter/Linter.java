@@ -1,7 +1,8 @@
 package cz.zipek.sqflint.linter;
 
 import cz.zipek.sqflint.sqf.SQFBlock;
-import cz.zipek.sqflint.output.LogUtil;
+import cz.zipek.sqflint.output.PhaseTrace;
+import cz.zipek.sqflint.parser.CharStream;
 import cz.zipek.sqflint.parser.ParseException;
 import cz.zipek.sqflint.parser.SQFParser;
 import cz.zipek.sqflint.parser.Token;
@@ -10,13 +11,22 @@ import cz.zipek.sqflint.preprocessor.SQFInclude;
 import cz.zipek.sqflint.preprocessor.SQFMacro;
 import cz.zipek.sqflint.preprocessor.SQFPreprocessor;
 import cz.zipek.sqflint.sqf.SQFContext;
+import cz.zipek.sqflint.sqf.SQFExpression;
+import cz.zipek.sqflint.sqf.SQFForExpressionStatement;
+import cz.zipek.sqflint.sqf.SQFScopeIndex;
+import cz.zipek.sqflint.sqf.operators.Operator;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -26,8 +36,8 @@ public class Linter extends SQFParser {
 	public static final int CODE_OK = 0;
 	public static final int CODE_ERR = 1;
 	
-	private final List<SQFParseException> errors = new ArrayList<>();
-	private final List<Warning> warnings = new ArrayList<>();
+	private final DiagnosticList<SQFParseException> errors = new DiagnosticList<>();
+	private final DiagnosticList<Warning> warnings = new DiagnosticList<>();
 	
 	private final List<SQFInclude> includes = new ArrayList<>();
 	private final List<SQFMacro> macros = new ArrayList<>();
@@ -37,18 +47,61 @@ public class Linter extends SQFParser {
 	
 	private Date startTime;
 	private String filePath;
+	private final PhaseTrace trace;
+	private SymbolTable symbols;
+	private final SQFScopeIndex scopes;
+	
+	private final List<LintCheckpoint> checkpoints = new ArrayList<>();
+	private boolean recovered = false;
+	private SQFContext rootContext;
+	private SQFContext topLevelContext;
+	
+	private Linter resumeFrom;
+	private LintCheckpoint resumePoint;
+	
+	// Variable of for loop which body is about to be parsed
+	private SQFExpression loopVariable;
+	private Token loopBlock;
+	// Closing braces found by lookahead of outer blocks
+	private final Map<Token, Token> closingBraces = new IdentityHashMap<>();
+	// Loop bodies waiting for their operand to be analyzed
+	private final Set<SQFBlock> deferredBlocks = new LinkedHashSet<>();
+	private int deferredDepth = 0;
+	
+	private int expressionCounter = 0;
 
 	public Linter(
 		Options options,
 		SQFPreprocessor preprocessor,
-		InputStream stream,
+		CharStream stream,
 		String filePath
 	) {
-		super(stream);
+		this(options, preprocessor, stream, filePath, PhaseTrace.disabled());
+	}
+	
+	public Linter(
+		Options options,
+		SQFPreprocessor preprocessor,
+		CharStream stream,
+		String filePath,
+		PhaseTrace trace
+	) {
+		super(
+			trace.isTokensEnabled() ?
+				new TracingTokenManager(stream, trace)
+				:
+				new LinterTokenManager(stream)
+		);
 		
 		this.options = options;
 		this.preprocessor = preprocessor;
 		this.filePath = filePath;
+		this.trace = trace;
+		
+		this.symbols = new SymbolTable(options, preprocessor);
+		token_source.setSymbols(symbols);
+		
+		this.scopes = new SQFScopeIndex(options);
 	}
 	
 	public int start() throws IOException {
@@ -56,11 +109,22 @@ public class Linter extends SQFParser {
 		
 		SQFBlock block = null;
 
+		if (resumeFrom != null) {
+			int index = resumeFrom.checkpoints.indexOf(resumePoint);
+			checkpoints.addAll(resumeFrom.checkpoints.subList(0, index + 1));
+			errors.addAll(resumeFrom.errors.subList(0, resumePoint.getErrors()));
+			warnings.addAll(resumeFrom.warnings.subList(0, resumePoint.getWarnings()));
+		}
+
 		startTime = new Date();
-		LogUtil.benchLog(options, this, filePath, "Linter (1) ");
+		trace.enter(PhaseTrace.Phase.PARSE);
 		try {
 			block = CompilationUnit();
 		} catch (ParseException | TokenMgrError  e) {
+			recovered = true;
+			
+			// Checkpoints before fatal error can't be used to resume
+			checkpoints.clear();
 			if (e instanceof SQFParseException) {
 				getErrors().add((SQFParseException)e);
 			} else if (e instanceof ParseException) {
@@ -69,13 +133,24 @@ public class Linter extends SQFParser {
 				getErrors().add(new SQFParseException((TokenMgrError)e));
 			}
 		} finally {
+			trace.exit();
+			
+			trace.enter(PhaseTrace.Phase.ANALYZE);
+			
+			// Operator of these bodies wasn't reached because of syntax error
+			while (!deferredBlocks.isEmpty()) {
+				analyzeDeferred(deferredBlocks.iterator().next());
+			}
+			
 			if (block != null) {
-				LogUtil.benchLog(options, this, filePath, "Linter (2)");
 				block.analyze(this, null);
-				LogUtil.benchLog(options, this, filePath, "Linter (3)");
 			}
+			
+			// Results are only read from now on
+			errors.compact();
+			warnings.compact();
+			trace.exit();
 		}
-		LogUtil.benchLog(options, this, filePath, "Linter (4)");
 		
 		// Always return OK if exit code is disabled
 		if (!options.isExitCodeEnabled()) {
@@ -89,6 +164,34 @@ public class Linter extends SQFParser {
 	public Date getStartTime() {
 		return startTime;
 	}
+	
+	/**
+	 * @return identifiers used in this file
+	 */
+	public SymbolTable getSymbols() {
+		return symbols;
+	}
+	
+	/**
+	 * @return bindings of variables in open contexts
+	 */
+	public SQFScopeIndex getScopes() {
+		return scopes;
+	}
+	
+	/**
+	 * @return trace measuring phases of this file, disabled unless bench logs are on
+	 */
+	public PhaseTrace getTrace() {
+		return trace;
+	}
+	
+	/**
+	 * @return id of new expression, unique in this file
+	 */
+	public int nextExpressionId() {
+		return expressionCounter++;
+	}
 		
 	/**
 	 * Post parse checks, mainly for warnings.
@@ -100,9 +203,209 @@ public class Linter extends SQFParser {
 	// 	getWarnings().addAll(preprocessor.getWarnings());
 	// }
 	
+	/**
+	 * Continues linting after checkpoint of previous linter.
+	 * Input of this linter has to contain only text after the checkpoint,
+	 * starting at the same position as in the original file.
+	 * 
+	 * @param previous linter of previous version of the same file
+	 * @param checkpoint one of previous linter checkpoints
+	 */
+	public void resume(Linter previous, LintCheckpoint checkpoint) {
+		this.resumeFrom = previous;
+		this.resumePoint = checkpoint;
+		
+		// Restored variables keep ids of the previous table
+		this.symbols = new SymbolTable(previous.symbols);
+		token_source.setSymbols(symbols);
+	}
+
+	/**
+	 * @return if top level context was restored from previous linter
+	 */
+	public boolean isResumed() {
+		return resumeFrom != null && topLevelContext != null;
+	}
+	
+	/**
+	 * @return if parser had to recover from syntax error
+	 */
+	public boolean hasRecovered() {
+		return recovered;
+	}
+
+	/**
+	 * @return checkpoints after top level statements, in order
+	 */
+	public List<LintCheckpoint> getCheckpoints() {
+		return checkpoints;
+	}
+	
 	@Override
 	protected void pushContext(boolean newThread) {
 		context = new SQFContext(this, context, newThread);
+		scopes.enter(context);
+		
+		if (rootContext == null) {
+			rootContext = context;
+			if (resumeFrom != null) {
+				resumePoint.restoreVariables(resumeFrom.rootContext, context);
+			}
+		} else if (topLevelContext == null && context.getPrevious() == rootContext) {
+			topLevelContext = context;
+			if (resumeFrom != null) {
+				resumePoint.restoreVariables(resumeFrom.topLevelContext, context);
+				resumePoint.restoreChildren(resumeFrom.topLevelContext, context);
+			}
+		}
+		
+		// Loop variable has to be known before the body is analyzed
+		if (loopVariable != null) {
+			if (getToken(0) == loopBlock) {
+				SQFForExpressionStatement.bindVariable(this, context, loopVariable);
+			}
+			loopVariable = null;
+		}
+	}
+	
+	@Override
+	protected void handleLoopVariable(SQFExpression variable) {
+		loopVariable = variable;
+		loopBlock = getToken(1);
+	}
+	
+	/**
+	 * Looks behind the block that was just opened. Blocks passed to forEach
+	 * or count are executed in the current thread, which has to be known
+	 * before the block contents are analyzed.
+	 * Analysis of these blocks is deferred, see deferAnalysis.
+	 * 
+	 * @return if the block is executed in the current thread
+	 */
+	@Override
+	protected boolean isInlineBlock() {
+		Token closing = findClosingBrace(getToken(0));
+		if (closing == null) {
+			return false;
+		}
+		
+		Token next = nextToken(closing);
+		if (next == null || next.kind != IDENTIFIER) {
+			return false;
+		}
+		
+		Operator operator = symbols.getOperator(symbols.of(next));
+		return operator != null && operator.isLeftBlockInline();
+	}
+	
+	/**
+	 * Operand of forEach and count is evaluated before the loop body,
+	 * so expressions of the body are only analyzed once the operator is.
+	 * 
+	 * @param body loop body that is being parsed
+	 */
+	@Override
+	protected void deferAnalysis(SQFBlock body) {
+		deferredDepth++;
+		deferredBlocks.add(body);
+	}
+	
+	@Override
+	protected void resumeAnalysis() {
+		deferredDepth--;
+	}
+	
+	/**
+	 * @return if expressions that are being parsed are part of loop body
+	 */
+	public boolean isAnalysisDeferred() {
+		return deferredDepth > 0;
+	}
+	
+	/**
+	 * @param block
+	 * @return if block is loop body that wasn't analyzed yet
+	 */
+	public boolean isDeferred(SQFBlock block) {
+		return deferredBlocks.contains(block);
+	}
+	
+	/**
+	 * Analyzes loop body once its operand is analyzed. Does nothing if the
+	 * block isn't loop body or was already analyzed.
+	 * 
+	 * @param body
+	 */
+	public void analyzeDeferred(SQFBlock body) {
+		if (deferredBlocks.remove(body)) {
+			body.finishDeferred();
+		}
+	}
+	
+	/**
+	 * Reads tokens until the brace is closed. Braces of nested blocks are
+	 * remembered, so every token is only read once.
+	 * 
+	 * @param opening
+	 * @return closing brace or null if the block isn't closed
+	 */
+	private Token findClosingBrace(Token opening) {
+		Token closing = closingBraces.remove(opening);
+		if (closing != null) {
+			return closing;
+		}
+		
+		Deque<Token> opened = new ArrayDeque<>();
+		opened.push(opening);
+		
+		for (Token current = nextToken(opening); current != null && current.kind != EOF; current = nextToken(current)) {
+			if (current.kind == LBRACE) {
+				opened.push(current);
+			} else if (current.kind == RBRACE) {
+				Token match = opened.pop();
+				if (match == opening) {
+					return current;
+				}
+				closingBraces.put(match, current);
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Same as getToken, but relative to specified token.
+	 * 
+	 * @return next token or null when there is lexical error
+	 */
+	private Token nextToken(Token token) {
+		if (token.next == null) {
+			token.next = ((LinterTokenManager)token_source).peekNextToken();
+		}
+		return token.next;
+	}
+	
+	@Override
+	protected void popContext() {
+		scopes.exit(context);
+		super.popContext();
+	}
+	
+	@Override
+	protected void handleSeparator(SQFBlock block) {
+		// State after recovery depends on where the error was
+		if (recovered || context != topLevelContext) {
+			return;
+		}
+		
+		Token separator = getToken(0);
+		checkpoints.add(new LintCheckpoint(
+			separator.endLine,
+			separator.endColumn,
+			errors.size(),
+			warnings.size(),
+			topLevelContext.getChildren().size()
+		));
 	}
 
 	@Override
@@ -144,6 +447,8 @@ public class Linter extends SQFParser {
 	 */
 	@Override
 	protected int recover(ParseException ex, int recoveryPoint, boolean skip) throws ParseException {
+		recovered = true;
+		
 		// Add to list of encountered errors
 		if (!(ex instanceof SQFParseException)) {
 			getErrors().add(new SQFParseException(ex));
@@ -189,7 +494,7 @@ public class Linter extends SQFParser {
 		Map<String, SQFVariable> variables = new HashMap<>();
 		
 		if (context != null) {
-			addContextVariables(variables, context);
+			addContextVariables(variables, Collections.newSetFromMap(new IdentityHashMap<>()), context);
 		} else {
 			System.err.println("NO CONTEXT!");
 		}
@@ -197,23 +502,33 @@ public class Linter extends SQFParser {
 		return variables;
 	}
 	
-	private void addContextVariables(Map<String, SQFVariable> container, SQFContext context) {
-		mergeVariables(container, context.getVariables());
-		context.getChildren().forEach(child -> { addContextVariables(container, child); });
-	}
-	
-	private void mergeVariables(Map<String, SQFVariable> container, Map<String, SQFVariable> newVariables) {
-		newVariables.keySet().forEach(key -> {
-			SQFVariable added = newVariables.get(key);
-			if (container.containsKey(key)) {
-				SQFVariable var = container.get(key);
-				var.usage.addAll(added.usage);
-				var.definitions.addAll(added.definitions);
-				var.comments.addAll(added.comments);
-			} else {
-				container.put(key, added.copy());
+	/**
+	 * Variables with the same name from multiple contexts are merged.
+	 * Variables used only in single context are returned as they are,
+	 * only merged variables are copied.
+	 */
+	private void addContextVariables(Map<String, SQFVariable> container, Set<SQFVariable> merged, SQFContext context) {
+		context.getVariables().forEach((key, added) -> {
+			SQFVariable var = container.get(key);
+			if (var == null) {
+				container.put(key, added);
+				return;
 			}
+			
+			if (!merged.contains(var)) {
+				var = var.copy();
+				container.put(key, var);
+				merged.add(var);
+			}
+			
+			var.usage.addAll(added.usage);
+			var.definitions.addAll(added.definitions);
+			var.comments.addAll(added.comments);
 		});
+		
+		for (SQFContext child : context.getChildren()) {
+			addContextVariables(container, merged, child);
+		}
 	}
 
 	/**
@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.linter;
+
+import cz.zipek.sqflint.parser.CharStream;
+import cz.zipek.sqflint.parser.SQFParserTokenManager;
+import cz.zipek.sqflint.parser.Token;
+import cz.zipek.sqflint.parser.TokenMgrError;
+
+/**
+ * Token manager used by linter.
+ * Linter reads tokens ahead of the parser. Lexical error found while
+ * reading ahead is thrown when the parser reaches it, as it would be
+ * without the lookahead.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+class LinterTokenManager extends SQFParserTokenManager {
+	private TokenMgrError deferred;
+
+	LinterTokenManager(CharStream stream) {
+		super(stream);
+	}
+
+	/**
+	 * Reads token ahead of the parser.
+	 *
+	 * @return next token or null when there is lexical error
+	 */
+	Token peekNextToken() {
+		try {
+			return getNextToken();
+		} catch (TokenMgrError ex) {
+			deferred = ex;
+			return null;
+		}
+	}
+
+	@Override
+	public Token getNextToken() {
+		if (deferred != null) {
+			TokenMgrError ex = deferred;
+			deferred = null;
+			throw ex;
+		}
+		return super.getNextToken();
+	}
+}
@@ -25,27 +25,14 @@ package cz.zipek.sqflint.linter;
 
 import cz.zipek.sqflint.output.OutputFormatter;
 import cz.zipek.sqflint.output.TextOutput;
-import cz.zipek.sqflint.sqf.operators.CountOperator;
-import cz.zipek.sqflint.sqf.operators.ExitWithOperator;
-import cz.zipek.sqflint.sqf.operators.ForEachOperator;
-import cz.zipek.sqflint.sqf.operators.GenericOperator;
-import cz.zipek.sqflint.sqf.operators.IfOperator;
-import cz.zipek.sqflint.sqf.operators.Operator;
-import cz.zipek.sqflint.sqf.operators.ParamsOperator;
-import cz.zipek.sqflint.sqf.operators.PathLoader;
-import cz.zipek.sqflint.sqf.operators.SetVariableOperator;
-import cz.zipek.sqflint.sqf.operators.ThenOperator;
-import java.io.BufferedReader;
+import cz.zipek.sqflint.sqf.operators.OperatorRegistry;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -53,6 +40,13 @@ import java.util.regex.Pattern;
  * @author Jan Zípek (jan at zipek.cz)
  */
 public final class Options {
+	private static final Set<String> defaultIgnoredVariables = Collections.unmodifiableSet(
+		new HashSet<>(Arrays.asList(new String[] {
+			"_this", "_x", "_foreachindex", "_exception",
+			"__file__", "__line__", "_thiseventhandler"
+		}))
+	);
+	
 	private OutputFormatter outputFormatter = new TextOutput();
 	private boolean stopOnError = false;
 	private boolean skipWarnings = false;
@@ -70,38 +64,18 @@ public final class Options {
 	private final Set<String> ignoredVariables;
 	private final Set<String> skippedVariables;
 	
-	private final Map<String, Operator> operators = new HashMap<>();
+	private final OperatorRegistry operators;
 
 	public Options() throws IOException {
 		skippedVariables = new HashSet<>();
-		ignoredVariables = new HashSet<>();
-		
-		ignoredVariables.addAll(Arrays.asList(new String[] {
-			"_this", "_x", "_foreachindex", "_exception",
-			"__file__", "__line__", "_thiseventhandler"
-		}));
-		
-		operators.put("params", new ParamsOperator());
-		operators.put("setvariable", new SetVariableOperator());
-		operators.put("execvm", new PathLoader());
-		operators.put("preprocessfile", new PathLoader());
-		operators.put("preprocessfilelinenumbers", new PathLoader());
-		operators.put("loadfile", new PathLoader());
-		operators.put("if", new IfOperator());
-		operators.put("then", new ThenOperator());
-		operators.put("exitwith", new ExitWithOperator());
-		operators.put("foreach", new ForEachOperator());
-		operators.put("count", new CountOperator());
-		
-		loadCommands();
-		
-		operators.put("&&", operators.get("and"));
-		operators.put("||", operators.get("or"));
+		ignoredVariables = defaultIgnoredVariables;
+		operators = OperatorRegistry.getDefault();
 	}
 	
 	/**
 	 * Creates a copy of the options with a new output formatter
      *  (they cannot be copied and have to be provided on a per file basis i.e. serveroutput)
+	 * Commands and ignored variables are read-only and shared with the original.
 	 */
 	public Options(Options old, OutputFormatter output) {
 		this.stopOnError = old.stopOnError;
@@ -119,122 +93,15 @@ public final class Options {
 			this.includePaths.put(key, old.includePaths.get(key));
 		}
 		
-		this.ignoredVariables = new HashSet<String>();
-		this.ignoredVariables.addAll(old.ignoredVariables);
+		this.ignoredVariables = old.ignoredVariables;
 		this.skippedVariables = new HashSet<String>();
 		this.skippedVariables.addAll(old.skippedVariables);
 		
-		for (String key : old.operators.keySet()) {
-			this.operators.put(key, old.operators.get(key));
-        }
+		this.operators = old.operators;
         
         this.outputFormatter = output;
 	}
 
-	/**
-	 * Loads commands list from resources.
-	 * 
-	 * @throws IOException 
-	 */
-	private void loadCommands() throws IOException {
-		// Binary commands
-		Pattern bre = Pattern.compile("(?i)b:([a-z0-9,]*) ([a-z0-9_]*) ([a-z0-9,]*)");
-		// Unary commands
-		Pattern ure = Pattern.compile("(?i)u:([a-z0-9_]*) ([a-z0-9,]*)");
-		// Noargs commands
-		Pattern nre = Pattern.compile("(?i)n:([a-z0-9_]*)");
-		
-		// Load commands list from jar file
-		InputStream in = getClass().getResourceAsStream("/res/commands.txt"); 
-		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-		
-		// Read line by line
-		String line;
-		while((line = reader.readLine()) != null) {
-			String ident = null;
-			String[] left = null;
-			String[] right = null;
-			
-			// Try to match one if the command regexp
-			Matcher m = bre.matcher(line);
-			if (m.find()) {
-				ident = m.group(2).toLowerCase();
-				
-				left = m.group(1).split(",");
-				right = m.group(3).split(",");
-			}
-			
-			m = ure.matcher(line);
-			if (m.find()) {
-				ident = m.group(1).toLowerCase();
-				
-				right = m.group(2).split(",");
-			}
-			
-			m = nre.matcher(line);
-			if (m.find()) {
-				ident = m.group(1).toLowerCase();
-			}
-			
-			if (ident != null) {
-				if (!operators.containsKey(ident)) {
-					operators.put(ident, new GenericOperator(ident));
-				}
-				
-				Operator op = operators.get(ident);
-				if (op instanceof GenericOperator) {					
-					GenericOperator genop = (GenericOperator)op;
-					for(GenericOperator.Type ttype : convertToTypes(left)) {
-						genop.addLeft(ttype);
-					}
-					for(GenericOperator.Type ttype : convertToTypes(right)) {
-						genop.addRight(ttype);
-					}
-					
-					if (left == null) {
-						genop.allowLeftEmpty(true);
-					}
-					
-					if (right == null) {
-						genop.allowRightEmpty(true);
-					}
-				}
-			}
-		}
-        
-        try {
-            reader.close();
-        } catch (Exception e) {
-            // log?
-        }
-    }
-	
-	/**
-	 * Converts string type definitions to enums.
-	 * @param values
-	 * @return 
-	 */
-	private GenericOperator.Type[] convertToTypes(String[] values) {
-		if (values == null) {
-			return new GenericOperator.Type[0];
-		}
-		
-		Set<GenericOperator.Type> types = new HashSet<>();
-		for(String tname : values) {
-			GenericOperator.Type ttype;
-			
-			try {
-				ttype = GenericOperator.Type.valueOf(tname.toUpperCase());
-			} catch(IllegalArgumentException e) {
-				ttype = GenericOperator.Type.ANY;
-			}
-			
-			types.add(ttype);
-		}
-		
-		return types.toArray(new GenericOperator.Type[0]);
-	}
-
 	/**
 	 * @return the outputFormatter
 	 */
@@ -362,7 +229,7 @@ public final class Options {
 	}
 
 	/**
-	 * @return the ignoredVariables
+	 * @return the ignoredVariables, read-only
 	 */
 	public Set<String> getIgnoredVariables() {
 		return ignoredVariables;
@@ -378,7 +245,7 @@ public final class Options {
 	/**
 	 * @return the operators
 	 */
-	public Map<String, Operator> getOperators() {
+	public OperatorRegistry getOperators() {
 		return operators;
 	}
 	
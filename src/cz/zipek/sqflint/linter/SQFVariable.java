@@ -25,6 +25,7 @@ public class SQFVariable {
 	
 	public SQFVariable copy() {
 		SQFVariable cloned = new SQFVariable(name);
+		cloned.isPrivate = isPrivate;
 		cloned.usage = new ArrayList<>();
 		cloned.usage.addAll(usage);
 		cloned.definitions = new ArrayList<>();
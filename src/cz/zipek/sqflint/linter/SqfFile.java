@@ -1,11 +1,12 @@
 package cz.zipek.sqflint.linter;
 
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import cz.zipek.sqflint.output.LogUtil;
-import cz.zipek.sqflint.output.StreamUtil;
+import cz.zipek.sqflint.output.PhaseTrace;
+import cz.zipek.sqflint.parser.StringCharStream;
 import cz.zipek.sqflint.preprocessor.SQFPreproccessException;
 import cz.zipek.sqflint.preprocessor.SQFPreprocessor;
 
@@ -16,25 +17,49 @@ public class SqfFile {
     private String fileContent;
     private Options options;
     private PreProcessorError preProcessorError;
+    private final PhaseTrace trace;
 
     public SqfFile(Options options, String fileContent, String filePath) {
+        this(options, fileContent, filePath, PhaseTrace.create(options));
+    }
+
+    /**
+     * @param options
+     * @param fileContent
+     * @param filePath
+     * @param trace trace used to measure phases of this file
+     */
+    public SqfFile(Options options, String fileContent, String filePath, PhaseTrace trace) {
         this.options = options;
         this.fileContent = fileContent;
         this.filePath = filePath;
+        this.trace = trace;
 
         this.preprocessor = new SQFPreprocessor(options);
     }
 
     public int process() {
+        return process(null);
+    }
 
+    /**
+     * Processes the file, reusing results of previous version of the file
+     * where possible. Preprocessing is always done again, linting continues
+     * from the last top level statement before the first changed character.
+     * Previous version has to be processed with the same options.
+     *
+     * @param previous previous version of this file, can be null
+     * @return exit code
+     */
+    public int process(SqfFile previous) {
+
+        trace.enter(PhaseTrace.Phase.PREPROCESS);
         try {
-            LogUtil.benchLog(options, this, filePath, "Preproc");
             this.fileContent = preprocessor.process(
                 this.fileContent,
                 this.filePath,
                 this.filePath != null
             );
-            LogUtil.benchLog(options, this, filePath, "Preproc done");
         } catch (SQFPreproccessException ex) {
             System.err.println("Preprocessor Error" + ex.getMessage());
             preProcessorError = new PreProcessorError(
@@ -43,19 +68,120 @@ public class SqfFile {
                 ex.getMessage()
             );
             return 1;
+        } finally {
+            trace.exit();
         }
 
         if (this.fileContent == null) {
             return 1;
         }
 
+        LintCheckpoint checkpoint = findCheckpoint(previous);
+        if (checkpoint != null) {
+            int result = resume(previous, checkpoint);
+
+            // Recovery from syntax errors depends on preceding statements
+            if (linter != null && linter.isResumed() && !linter.hasRecovered()) {
+                return result;
+            }
+        }
+
         // Create linter from preprocessed input
         this.linter = new Linter(
             options,
             preprocessor,
-            StreamUtil.stringToStream(this.fileContent),
-            this.filePath
+            new StringCharStream(this.fileContent),
+            this.filePath,
+            trace
+        );
+
+        try {
+            return linter.start();
+        } catch (IOException ex) {
+            Logger.getLogger(SqfFile.class.getName()).log(Level.SEVERE, null, ex);
+            return 1;
+        }
+    }
+
+    /**
+     * Prints results using output formatter from options. When bench logs
+     * are enabled, times of all phases are printed afterwards.
+     */
+    public void print() {
+        print(System.out, System.err);
+
+        if (options.isBenchLogs()) {
+            trace.report(filePath);
+        }
+    }
+
+    /**
+     * Prints results to specified streams using output formatter from options.
+     *
+     * @param out stream used for results
+     * @param err stream used for human readable messages
+     */
+    public void print(PrintStream out, PrintStream err) {
+        trace.enter(PhaseTrace.Phase.SERIALIZE);
+        try {
+            options.getOutputFormatter().print(this, out, err);
+        } finally {
+            trace.exit();
+        }
+    }
+
+    /**
+     * Finds last checkpoint of previous linter which lies before the first
+     * changed character. Nothing is reused when previous linter hit syntax
+     * error, as its checkpoints don't have to match result of full lint.
+     *
+     * @param previous
+     * @return checkpoint or null if nothing can be reused
+     */
+    private LintCheckpoint findCheckpoint(SqfFile previous) {
+        if (previous == null
+            || previous.getLinter() == null
+            || previous.getLinter().hasRecovered()
+            || previous.getPreProcessorError() != null
+            || !previous.getPreprocessor().getMacros().keySet().equals(preprocessor.getMacros().keySet())
+        ) {
+            return null;
+        }
+
+        String previousContent = previous.getFileContent();
+        int length = Math.min(previousContent.length(), fileContent.length());
+        int common = 0;
+        while (common < length && previousContent.charAt(common) == fileContent.charAt(common)) {
+            common++;
+        }
+
+        // Position of the first changed character
+        int[] position = positionOf(fileContent, common);
+
+        LintCheckpoint result = null;
+        for (LintCheckpoint checkpoint : previous.getLinter().getCheckpoints()) {
+            if (!checkpoint.isBefore(position[0], position[1])) {
+                break;
+            }
+            result = checkpoint;
+        }
+
+        return result;
+    }
+
+    private int resume(SqfFile previous, LintCheckpoint checkpoint) {
+        int line = checkpoint.getLine();
+        int column = checkpoint.getColumn();
+
+        // Continue reading right after the checkpoint, token positions stay the same
+        this.linter = new Linter(
+            options,
+            preprocessor,
+            new StringCharStream(fileContent, offsetOf(fileContent, line, column) + 1, line, column),
+            this.filePath,
+            trace
         );
+        linter.resume(previous.getLinter(), checkpoint);
 
         try {
             return linter.start();
@@ -65,6 +191,41 @@ public class SqfFile {
         }
     }
 
+    /**
+     * Converts offset to line and column, counted the same way the parser does.
+     */
+    private static int[] positionOf(String text, int offset) {
+        int line = 1;
+        int column = 1;
+        for (int i = 0; i < offset; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || (c == '\r' && (i + 1 >= text.length() || text.charAt(i + 1) != '\n'))) {
+                line++;
+                column = 1;
+            } else if (c != '\r') {
+                column++;
+            }
+        }
+        return new int[] { line, column };
+    }
+
+    /**
+     * Converts line and column to offset, counted the same way the parser does.
+     */
+    private static int offsetOf(String text, int line, int column) {
+        int offset = 0;
+        for (int i = 1; i < line; i++) {
+            while (text.charAt(offset) != '\n' && text.charAt(offset) != '\r') {
+                offset++;
+            }
+            if (text.charAt(offset) == '\r' && offset + 1 < text.length() && text.charAt(offset + 1) == '\n') {
+                offset++;
+            }
+            offset++;
+        }
+        return offset + column - 1;
+    }
+
     public SQFPreprocessor getPreprocessor() {
         return preprocessor;
     }
@@ -105,6 +266,10 @@ public class SqfFile {
         this.options = options;
     }
 
+    public PhaseTrace getTrace() {
+        return trace;
+    }
+
     public PreProcessorError getPreProcessorError() {
         return preProcessorError;
     }
@@ -0,0 +1,253 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.linter;
+
+import cz.zipek.sqflint.parser.Token;
+import cz.zipek.sqflint.preprocessor.SQFPreprocessor;
+import cz.zipek.sqflint.sqf.operators.Operator;
+import java.util.Arrays;
+
+/**
+ * Case insensitive table of identifiers used in linted file.
+ * Every identifier gets an id when it's first read. Lowercased name and
+ * everything that only depends on the name (command, macro, ignored
+ * variable) is then resolved once per identifier instead of once per use.
+ *
+ * Uses open addressing with linear probing, the table is at most half full.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public final class SymbolTable {
+	private static final byte RESOLVED = 1;
+	private static final byte MACRO = 2;
+	private static final byte SKIPPED = 4;
+	
+	private final Options options;
+	private final SQFPreprocessor preprocessor;
+	
+	// Slot contains id + 1, zero is empty slot
+	private int[] slots;
+	private String[] names;
+	private int[] hashes;
+	private Operator[] operators;
+	private byte[] flags;
+	private int size = 0;
+	
+	public SymbolTable(Options options, SQFPreprocessor preprocessor) {
+		this.options = options;
+		this.preprocessor = preprocessor;
+		
+		slots = new int[256];
+		names = new String[64];
+		hashes = new int[64];
+		operators = new Operator[64];
+		flags = new byte[64];
+	}
+	
+	/**
+	 * Creates copy of specified table, ids stay the same.
+	 * 
+	 * @param source
+	 */
+	public SymbolTable(SymbolTable source) {
+		this.options = source.options;
+		this.preprocessor = source.preprocessor;
+		
+		slots = source.slots.clone();
+		names = source.names.clone();
+		hashes = source.hashes.clone();
+		operators = source.operators.clone();
+		flags = source.flags.clone();
+		size = source.size;
+	}
+	
+	/**
+	 * Loads id of specified name, ignoring case.
+	 * 
+	 * @param name
+	 * @return id of the name
+	 */
+	public int intern(CharSequence name) {
+		if (!isAscii(name)) {
+			// Lowercasing non-ascii characters can change length of the name
+			name = name.toString().toLowerCase();
+		}
+		
+		int hash = hash(name);
+		int mask = slots.length - 1;
+		int index = hash & mask;
+		
+		while (slots[index] != 0) {
+			int id = slots[index] - 1;
+			if (hashes[id] == hash && matches(names[id], name)) {
+				return id;
+			}
+			index = (index + 1) & mask;
+		}
+		
+		int id = size++;
+		if (id == names.length) {
+			names = Arrays.copyOf(names, id * 2);
+			hashes = Arrays.copyOf(hashes, id * 2);
+			operators = Arrays.copyOf(operators, id * 2);
+			flags = Arrays.copyOf(flags, id * 2);
+		}
+		
+		names[id] = lowercase(name);
+		hashes[id] = hash;
+		slots[index] = id + 1;
+		
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * Loads id of identifier token. Tokens read by the parser already have
+	 * it, other tokens get it assigned.
+	 * 
+	 * @param token
+	 * @return id of token image
+	 */
+	public int of(Token token) {
+		if (token.symbol < 0) {
+			token.symbol = intern(token.image);
+		}
+		return token.symbol;
+	}
+	
+	/**
+	 * @param id
+	 * @return lowercased name
+	 */
+	public String getName(int id) {
+		return names[id];
+	}
+	
+	/**
+	 * @param id
+	 * @return command with specified name or null if there's none
+	 */
+	public Operator getOperator(int id) {
+		resolve(id);
+		return operators[id];
+	}
+	
+	/**
+	 * @param id
+	 * @return if the name is a macro
+	 */
+	public boolean isMacro(int id) {
+		resolve(id);
+		return (flags[id] & MACRO) != 0;
+	}
+	
+	/**
+	 * @param id
+	 * @return if the name is ignored by definition checker
+	 */
+	public boolean isSkipped(int id) {
+		resolve(id);
+		return (flags[id] & SKIPPED) != 0;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	private void resolve(int id) {
+		if ((flags[id] & RESOLVED) != 0) {
+			return;
+		}
+		
+		String name = names[id];
+		byte resolved = RESOLVED;
+		
+		operators[id] = options.getOperators().get(name);
+		if (preprocessor != null && preprocessor.getMacros().containsKey(name)) {
+			resolved |= MACRO;
+		}
+		if (options.isVariableSkipped(name)) {
+			resolved |= SKIPPED;
+		}
+		
+		flags[id] = resolved;
+	}
+	
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		
+		for (int id = 0; id < size; id++) {
+			int index = hashes[id] & mask;
+			while (slots[index] != 0) {
+				index = (index + 1) & mask;
+			}
+			slots[index] = id + 1;
+		}
+	}
+	
+	private static boolean isAscii(CharSequence name) {
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) >= 128) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static char lower(char c) {
+		return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+	}
+	
+	private static String lowercase(CharSequence name) {
+		char[] result = new char[name.length()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = lower(name.charAt(i));
+		}
+		return new String(result);
+	}
+	
+	private static int hash(CharSequence name) {
+		int hash = 0;
+		for (int i = 0; i < name.length(); i++) {
+			hash = 31 * hash + lower(name.charAt(i));
+		}
+		return hash ^ (hash >>> 16);
+	}
+	
+	private static boolean matches(String lowercased, CharSequence name) {
+		if (lowercased.length() != name.length()) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (lowercased.charAt(i) != lower(name.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
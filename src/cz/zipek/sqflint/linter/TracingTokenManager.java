@@ -0,0 +1,53 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.linter;
+
+import cz.zipek.sqflint.output.PhaseTrace;
+import cz.zipek.sqflint.parser.CharStream;
+import cz.zipek.sqflint.parser.Token;
+
+/**
+ * Token manager that measures time spent by reading tokens.
+ * Only used when tracing is enabled.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+class TracingTokenManager extends LinterTokenManager {
+	private final PhaseTrace trace;
+
+	TracingTokenManager(CharStream stream, PhaseTrace trace) {
+		super(stream);
+		this.trace = trace;
+	}
+
+	@Override
+	public Token getNextToken() {
+		trace.enter(PhaseTrace.Phase.LEX);
+		try {
+			return super.getNextToken();
+		} finally {
+			trace.exit();
+		}
+	}
+}
@@ -0,0 +1,353 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.output;
+
+import cz.zipek.sqflint.linter.Linter;
+import cz.zipek.sqflint.linter.PreProcessorError;
+import cz.zipek.sqflint.linter.SQFParseException;
+import cz.zipek.sqflint.linter.SQFVariable;
+import cz.zipek.sqflint.linter.SqfFile;
+import cz.zipek.sqflint.linter.Warning;
+import cz.zipek.sqflint.parser.Token;
+import cz.zipek.sqflint.preprocessor.SQFInclude;
+import cz.zipek.sqflint.preprocessor.SQFMacro;
+import cz.zipek.sqflint.preprocessor.SQFMacroDefinition;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONObject;
+
+/**
+ * Compact binary alternative to {@link ServerOutput}.
+ * 
+ * Every response is a frame: 4 byte big endian length followed by payload.
+ * Payload starts with frame type, {@link #FRAME_RESULT} contains the same
+ * information as JSON response of the server, {@link #FRAME_JSON} contains
+ * UTF-8 JSON text (used for other responses, like stats).
+ * 
+ * Numbers are unsigned LEB128 varints, signed values are zigzag encoded.
+ * Strings are varint byte length + 1 followed by UTF-8 bytes, 0 is null.
+ * 
+ * File paths and names (variables, macros, includes) are references to a
+ * string table shared by all frames of the session: 0 is null, 1 defines
+ * new string (written right after it, gets next free index starting at 0),
+ * n &gt; 1 refers to string at index n - 2. Frames have to be decoded in
+ * the order they were written.
+ * 
+ * Result payload:
+ * <pre>
+ * type      byte      FRAME_RESULT
+ * id        string    message id as JSON text, null if there was none
+ * file      ref
+ * time      varint    time needed in ms
+ * count     varint    number of messages, then messages:
+ *   kind    byte      MESSAGE_*
+ *   error:    range, message string
+ *   warning:  filename ref, range, message string
+ *   variable: name ref, comment string, usage ranges, definitions ranges
+ *   include:  include ref, expanded include ref, source ref
+ *   macro:    name ref, arguments string, count, definitions:
+ *             filename ref, range, value string
+ * </pre>
+ * 
+ * Range is begin line (zigzag delta from begin line of previous range in
+ * the same list, 0 for single range), begin column, and end column as
+ * zigzag delta from begin column shifted left by one. Lowest bit is set
+ * when the range spans multiple lines, end line then follows as zigzag
+ * delta from begin line. List of ranges is prefixed with varint count.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class BinaryOutput implements OutputFormatter {
+	public static final int FRAME_RESULT = 1;
+	public static final int FRAME_JSON = 2;
+	
+	public static final int MESSAGE_ERROR = 0;
+	public static final int MESSAGE_WARNING = 1;
+	public static final int MESSAGE_VARIABLE = 2;
+	public static final int MESSAGE_INCLUDE = 3;
+	public static final int MESSAGE_MACRO = 4;
+	
+	private final Session session;
+	private final String filename;
+	private final Object id;
+	
+	/**
+	 * @param session session the response belongs to
+	 * @param filename processed file
+	 * @param id client message id echoed back in response, can be null
+	 */
+	public BinaryOutput(Session session, String filename, Object id) {
+		this.session = session;
+		this.filename = filename;
+		this.id = id;
+	}
+	
+	/**
+	 * Writes frame while holding the stream lock. Strings are added to the
+	 * table in the same order frames are written.
+	 */
+	@Override
+	public void print(SqfFile sqfFile, PrintStream out, PrintStream err) {
+		synchronized (out) {
+			Frame frame = new Frame();
+			try {
+				frame.writeByte(FRAME_RESULT);
+				frame.writeString(id != null ? JSONObject.valueToString(id) : null);
+				session.writeRef(frame, filename);
+				frame.writeVarint(
+					sqfFile.getLinter() != null && sqfFile.getLinter().getStartTime() != null ?
+						new Date().getTime() - sqfFile.getLinter().getStartTime().getTime()
+						:
+						0
+				);
+				writeMessages(frame, sqfFile);
+			} catch (RuntimeException ex) {
+				// Client never receives strings defined by this frame
+				session.forget(frame);
+				throw ex;
+			}
+			
+			frame.writeTo(out);
+			out.flush();
+		}
+	}
+	
+	private void writeMessages(Frame frame, SqfFile sqfFile) {
+		Linter linter = sqfFile.getLinter();
+		
+		if (sqfFile.getPreProcessorError() != null) {
+			PreProcessorError preProcError = sqfFile.getPreProcessorError();
+			
+			frame.writeVarint(1);
+			frame.writeByte(MESSAGE_ERROR);
+			writeRange(frame, 0, preProcError.getLine(), preProcError.getLine(), 0, 0);
+			frame.writeString(preProcError.getMessage());
+			return;
+		}
+		
+		boolean variables = linter.getOptions().isOutputVariables();
+		Map<String, SQFVariable> variableInfo = variables ? linter.getVariables() : null;
+		
+		int count = linter.getErrors().size() + linter.getWarnings().size();
+		if (variables) {
+			count += variableInfo.size()
+				+ sqfFile.getPreprocessor().getIncludes().size()
+				+ sqfFile.getPreprocessor().getMacros().size();
+		}
+		frame.writeVarint(count);
+		
+		for (SQFParseException e : linter.getErrors()) {
+			Token pos = e.currentToken;
+			if (e.currentToken.next != null) {
+				pos = e.currentToken.next;
+			}
+			
+			frame.writeByte(MESSAGE_ERROR);
+			writeRange(frame, 0, pos);
+			frame.writeString(e.getJSONMessage());
+		}
+		
+		for (Warning e : linter.getWarnings()) {
+			frame.writeByte(MESSAGE_WARNING);
+			session.writeRef(frame, e.getFilename());
+			writeRange(frame, 0, e.getToken());
+			frame.writeString(e.getMessage());
+		}
+		
+		if (!variables) {
+			return;
+		}
+		
+		for (SQFVariable v : variableInfo.values()) {
+			String comment = null;
+			if (v.comments.size() > 0 && v.comments.get(0) != null) {
+				comment = v.comments.get(0).toString();
+			}
+			
+			frame.writeByte(MESSAGE_VARIABLE);
+			session.writeRef(frame, v.name);
+			frame.writeString(comment);
+			writeRanges(frame, v.usage);
+			writeRanges(frame, v.definitions);
+		}
+		
+		for (SQFInclude entry : sqfFile.getPreprocessor().getIncludes()) {
+			frame.writeByte(MESSAGE_INCLUDE);
+			session.writeRef(frame, entry.getFile());
+			session.writeRef(frame, entry.getExpandedFile());
+			session.writeRef(frame, entry.getSource());
+		}
+		
+		for (SQFMacro macro : sqfFile.getPreprocessor().getMacros().values()) {
+			frame.writeByte(MESSAGE_MACRO);
+			session.writeRef(frame, macro.getName());
+			frame.writeString(macro.getArguments());
+			
+			frame.writeVarint(macro.getDefinitions().size());
+			for (SQFMacroDefinition item : macro.getDefinitions()) {
+				session.writeRef(frame, item.getFilename());
+				writeRange(frame, 0, item.getToken());
+				frame.writeString(item.getValue());
+			}
+		}
+	}
+	
+	private void writeRanges(Frame frame, List<Token> tokens) {
+		frame.writeVarint(tokens.size());
+		
+		int previous = 0;
+		for (Token token : tokens) {
+			writeRange(frame, previous, token);
+			previous = token.beginLine;
+		}
+	}
+	
+	private void writeRange(Frame frame, int previousLine, Token token) {
+		writeRange(frame, previousLine, token.beginLine, token.endLine, token.beginColumn, token.endColumn);
+	}
+	
+	private void writeRange(Frame frame, int previousLine, int beginLine, int endLine, int beginColumn, int endColumn) {
+		frame.writeSigned(beginLine - previousLine);
+		frame.writeVarint(beginColumn);
+		
+		long length = endColumn - beginColumn;
+		frame.writeVarint((((length << 1) ^ (length >> 63)) << 1) | (endLine != beginLine ? 1 : 0));
+		if (endLine != beginLine) {
+			frame.writeSigned(endLine - beginLine);
+		}
+	}
+	
+	/**
+	 * State shared by all responses sent to one client.
+	 */
+	public static class Session {
+		private final Map<String, Integer> strings = new HashMap<>();
+		
+		/**
+		 * Writes JSON frame while holding the stream lock.
+		 * 
+		 * @param out
+		 * @param json 
+		 */
+		public void printJSON(PrintStream out, String json) {
+			synchronized (out) {
+				Frame frame = new Frame();
+				frame.writeByte(FRAME_JSON);
+				frame.writeBytes(json.getBytes(StandardCharsets.UTF_8));
+				
+				frame.writeTo(out);
+				out.flush();
+			}
+		}
+		
+		private void writeRef(Frame frame, String value) {
+			if (value == null) {
+				frame.writeVarint(0);
+				return;
+			}
+			
+			Integer index = strings.get(value);
+			if (index != null) {
+				frame.writeVarint(index + 2);
+			} else {
+				strings.put(value, strings.size());
+				frame.defined.add(value);
+				frame.writeVarint(1);
+				frame.writeString(value);
+			}
+		}
+		
+		private void forget(Frame frame) {
+			for (String value : frame.defined) {
+				strings.remove(value);
+			}
+		}
+	}
+	
+	/**
+	 * Payload of single frame.
+	 */
+	private static class Frame {
+		private byte[] data = new byte[256];
+		private int size = 0;
+		
+		// Strings added to the table by this frame
+		private final List<String> defined = new ArrayList<>();
+		
+		void writeByte(int value) {
+			ensure(1);
+			data[size++] = (byte)value;
+		}
+		
+		void writeVarint(long value) {
+			ensure(10);
+			while ((value & ~0x7FL) != 0) {
+				data[size++] = (byte)((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			data[size++] = (byte)value;
+		}
+		
+		void writeSigned(long value) {
+			writeVarint((value << 1) ^ (value >> 63));
+		}
+		
+		void writeString(String value) {
+			if (value == null) {
+				writeVarint(0);
+				return;
+			}
+			
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarint(bytes.length + 1L);
+			writeBytes(bytes);
+		}
+		
+		void writeBytes(byte[] bytes) {
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, data, size, bytes.length);
+			size += bytes.length;
+		}
+		
+		void writeTo(PrintStream out) {
+			out.write(size >>> 24);
+			out.write(size >>> 16);
+			out.write(size >>> 8);
+			out.write(size);
+			out.write(data, 0, size);
+		}
+		
+		private void ensure(int length) {
+			if (size + length > data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+			}
+		}
+	}
+}
@@ -2,205 +2,176 @@ package cz.zipek.sqflint.output;
 
 import cz.zipek.sqflint.linter.Linter;
 import cz.zipek.sqflint.linter.PreProcessorError;
+import cz.zipek.sqflint.linter.SQFParseException;
 import cz.zipek.sqflint.linter.SQFVariable;
 import cz.zipek.sqflint.linter.SqfFile;
+import cz.zipek.sqflint.linter.Warning;
 import cz.zipek.sqflint.parser.Token;
+import cz.zipek.sqflint.preprocessor.SQFInclude;
 import cz.zipek.sqflint.preprocessor.SQFMacro;
-import java.util.ArrayList;
+import cz.zipek.sqflint.preprocessor.SQFMacroDefinition;
+import java.io.PrintStream;
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
- *
+ * Prints every message as single JSON object on its own line.
+ * 
+ * Messages are written straight to the output. Keys of every message are
+ * written in the order JSONObject used to print them, so the output stays
+ * the same as when messages were built using org.json.
+ * 
  * @author Jan Zípek (jan at zipek.cz)
  */
 public class JSONOutput implements OutputFormatter {	
-	protected List<JSONObject> build(SqfFile sqfFile) {
-
+	/**
+	 * Writes all messages about the file.
+	 * 
+	 * @param writer
+	 * @param sqfFile
+	 * @param lines put every message on its own line
+	 */
+	void writeMessages(JSONStreamWriter writer, SqfFile sqfFile, boolean lines) {
 		Linter linter = sqfFile.getLinter();
-
-		List<JSONObject> result = new ArrayList<>();
 		
 		if (sqfFile.getPreProcessorError() != null) {
 			PreProcessorError preProcError = sqfFile.getPreProcessorError();
-			try {
-
-				JSONObject error = new JSONObject();
-				error.put("line", new JSONArray(new int[] {
-					preProcError.getLine(), preProcError.getLine()
-				}));
-				error.put("column", new JSONArray(new int[] {
-					0, 0
-				}));
-				
-				error.put("type", "error");
-				error.put("message", preProcError.getMessage());
-
-				result.add(error);
-			} catch (JSONException ex) {
-				Logger.getLogger(JSONOutput.class.getName()).log(Level.SEVERE, null, ex);
-			}
-			return result;
+			
+			writer.beginObject();
+			writePair(writer, "line", preProcError.getLine(), preProcError.getLine());
+			writePair(writer, "column", 0, 0);
+			writer.field("type", "error");
+			writer.field("message", preProcError.getMessage());
+			writer.endObject();
+			
+			endMessage(writer, lines);
+			return;
 		}
 
 		// Print errors
-		linter.getErrors().stream().forEach((e) -> {
-			try {
-				Token pos = e.currentToken;
-				if (e.currentToken.next != null) {
-					pos = e.currentToken.next;
-				}
-				
-				JSONObject error = getRange(pos);
-				error.put("type", "error");
-				error.put("message", e.getJSONMessage());
-
-				result.add(error);
-			} catch (JSONException ex) {
-				Logger.getLogger(JSONOutput.class.getName()).log(Level.SEVERE, null, ex);
+		for (SQFParseException e : linter.getErrors()) {
+			Token pos = e.currentToken;
+			if (e.currentToken.next != null) {
+				pos = e.currentToken.next;
 			}
-		});
+			
+			writer.beginObject();
+			writeRangeFields(writer, pos);
+			writer.field("type", "error");
+			writer.field("message", e.getJSONMessage());
+			writer.endObject();
+			
+			endMessage(writer, lines);
+		}
 		
 		// Print warnings
-		linter.getWarnings().stream().forEach((e) -> {
-			try {
-				JSONObject error = getRange(e.getToken());
-				error.put("type", "warning");
-				error.put("message", e.getMessage());
-				
-				if (e.getFilename() != null) {
-					error.put("filename", e.getFilename());
-				}
-				
-				result.add(error);
-			} catch (JSONException ex) {
-				Logger.getLogger(JSONOutput.class.getName()).log(Level.SEVERE, null, ex);
-			}
-		});
+		for (Warning e : linter.getWarnings()) {
+			writer.beginObject();
+			writer.field("filename", e.getFilename());
+			writeRangeFields(writer, e.getToken());
+			writer.field("type", "warning");
+			writer.field("message", e.getMessage());
+			writer.endObject();
+			
+			endMessage(writer, lines);
+		}
 		
 		if (linter.getOptions().isOutputVariables()) {
 			// Print variables info
-			linter.getVariables().entrySet().stream().forEach((entry) -> {
-				try {
-					SQFVariable v = entry.getValue();
-					String comment = null;
-					if (v.comments.size() > 0 && v.comments.get(0) != null) {
-						comment = v.comments.get(0).toString();
-					}
-
-					JSONArray definitions = new JSONArray();
-					JSONArray usage = new JSONArray();
-
-					// Build usage array containing positions of usages
-					v.usage.stream().forEach((u) -> {
-						try {
-							usage.put(getRange(u));
-						} catch (JSONException ex) {
-							Logger.getLogger(JSONOutput.class.getName()).log(Level.SEVERE, null, ex);
-						}
-					});
-
-					// Build definitions array containing positions of definitions
-					v.definitions.stream().forEach((d) -> {
-						try {
-							definitions.put(getRange(d));
-						} catch (JSONException ex) {
-							Logger.getLogger(JSONOutput.class.getName()).log(Level.SEVERE, null, ex);
-						}
-					});
-
-					// Build result message
-					JSONObject var = new JSONObject();
-					var.put("type", "variable");
-					var.put("variable", v.name);
-					var.put("usage", usage);
-					var.put("definitions", definitions);
-					var.put("comment", comment);
-
-					result.add(var);
-				} catch (JSONException ex) {
-					Logger.getLogger(JSONOutput.class.getName()).log(Level.SEVERE, null, ex);
+			for (SQFVariable v : linter.getVariables().values()) {
+				String comment = null;
+				if (v.comments.size() > 0 && v.comments.get(0) != null) {
+					comment = v.comments.get(0).toString();
 				}
-			});
+				
+				writer.beginObject();
+				writer.key("usage");
+				writeRanges(writer, v.usage);
+				writer.field("variable", v.name);
+				writer.field("comment", comment);
+				writer.field("type", "variable");
+				writer.key("definitions");
+				writeRanges(writer, v.definitions);
+				writer.endObject();
+				
+				endMessage(writer, lines);
+			}
 			
 			// Print includes
-			sqfFile.getPreprocessor().getIncludes().stream().forEach((entry) -> {
-				try {
-					JSONObject info = new JSONObject();
-					info.put("type", "include");
-					info.put("include", entry.getFile());
-					info.put("expandedInclude", entry.getExpandedFile());
-					info.put("from", entry.getSource());
-					
-					result.add(info);
-				} catch (JSONException ex) {
-					Logger.getLogger(JSONOutput.class.getName()).log(Level.SEVERE, null, ex);
-				}
-			});
+			for (SQFInclude entry : sqfFile.getPreprocessor().getIncludes()) {
+				writer.beginObject();
+				writer.field("include", entry.getFile());
+				writer.field("expandedInclude", entry.getExpandedFile());
+				writer.field("from", entry.getSource());
+				writer.field("type", "include");
+				writer.endObject();
+				
+				endMessage(writer, lines);
+			}
 			
 			// Print macros info
-			sqfFile.getPreprocessor().getMacros().entrySet().stream().forEach((entry) -> {
-				try {
-					SQFMacro macro = entry.getValue();
-					
-					JSONArray definitions = new JSONArray();
-					macro.getDefinitions().stream().forEach((item) -> {
-						try {
-							JSONObject def = new JSONObject();
-							def.put("range", getRange(item.getToken()));
-							def.put("value", item.getValue());
-							def.put("filename", item.getFilename());
-							definitions.put(def);
-						} catch (JSONException ex) {
-							Logger.getLogger(JSONOutput.class.getName()).log(Level.SEVERE, null, ex);
-						}
-					});
-					
-					JSONObject info = new JSONObject();
-					info.put("type", "macro");
-					info.put("macro", macro.getName());
-					info.put("arguments", macro.getArguments());
-					info.put("definitions", definitions);
-					
-					result.add(info);
-				} catch (JSONException ex) {
-					Logger.getLogger(JSONOutput.class.getName()).log(Level.SEVERE, null, ex);
+			for (SQFMacro macro : sqfFile.getPreprocessor().getMacros().values()) {
+				writer.beginObject();
+				writer.field("macro", macro.getName());
+				writer.field("arguments", macro.getArguments());
+				writer.field("type", "macro");
+				
+				writer.key("definitions").beginArray();
+				for (SQFMacroDefinition item : macro.getDefinitions()) {
+					writer.beginObject();
+					writer.field("filename", item.getFilename());
+					writer.key("range");
+					writeRange(writer, item.getToken());
+					writer.field("value", item.getValue());
+					writer.endObject();
 				}
-			});
+				writer.endArray();
+				
+				writer.endObject();
+				
+				endMessage(writer, lines);
+			}
 		}
-		
-		return result;
 	}
 	
 	@Override
-	public void print(SqfFile sqfFile) {		
-		build(sqfFile).stream().forEach((item) -> {
-			System.out.println(item.toString());
-		});
+	public void print(SqfFile sqfFile, PrintStream out, PrintStream err) {
+		JSONStreamWriter writer = new JSONStreamWriter(out);
+		writeMessages(writer, sqfFile, true);
+		writer.flush();
+	}
+	
+	private void endMessage(JSONStreamWriter writer, boolean lines) {
+		if (lines) {
+			writer.newLine();
+		}
+	}
+	
+	private void writeRanges(JSONStreamWriter writer, List<Token> tokens) {
+		writer.beginArray();
+		for (Token token : tokens) {
+			writeRange(writer, token);
+		}
+		writer.endArray();
 	}
 	
 	/**
-	 * Builds json containing info about token position.
+	 * Writes object containing info about token position.
 	 * 
+	 * @param writer
 	 * @param token
-	 * @return info about token position
-	 * @throws JSONException 
 	 */
-	private JSONObject getRange(Token token) throws JSONException {
-		JSONObject range = new JSONObject();
-		
-		range.put("line", new JSONArray(new int[] {
-			token.beginLine, token.endLine
-		}));
-		range.put("column", new JSONArray(new int[] {
-			token.beginColumn, token.endColumn
-		}));
-		
-		return range;
+	private void writeRange(JSONStreamWriter writer, Token token) {
+		writer.beginObject();
+		writeRangeFields(writer, token);
+		writer.endObject();
 	}
 	
+	private void writeRangeFields(JSONStreamWriter writer, Token token) {
+		writePair(writer, "line", token.beginLine, token.endLine);
+		writePair(writer, "column", token.beginColumn, token.endColumn);
+	}
+	
+	private void writePair(JSONStreamWriter writer, String key, int first, int second) {
+		writer.key(key).beginArray().value(first).value(second).endArray();
+	}
 }
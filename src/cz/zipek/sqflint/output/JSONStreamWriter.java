@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.output;
+
+import java.io.PrintStream;
+import org.json.JSONObject;
+
+/**
+ * Writes JSON to a stream as it goes, without building the document first.
+ * Output is collected in a small buffer which is printed whenever it fills
+ * up, so the stream encodes it the same way it encodes println.
+ * 
+ * Strings are escaped the same way org.json escapes them. Keys are written
+ * in the order they're specified, callers are responsible for keeping the
+ * order JSONObject would use.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+class JSONStreamWriter {
+	private static final int BUFFER_SIZE = 8192;
+	private static final int MAX_DEPTH = 63;
+	
+	private final PrintStream out;
+	private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 256);
+	
+	// One bit per nesting level, set when the level already contains a value
+	private long nonEmpty = 0;
+	private int depth = 0;
+	private boolean afterKey = false;
+	
+	JSONStreamWriter(PrintStream out) {
+		this.out = out;
+	}
+	
+	JSONStreamWriter beginObject() {
+		beforeValue();
+		open('{');
+		return this;
+	}
+	
+	JSONStreamWriter endObject() {
+		close('}');
+		return this;
+	}
+	
+	JSONStreamWriter beginArray() {
+		beforeValue();
+		open('[');
+		return this;
+	}
+	
+	JSONStreamWriter endArray() {
+		close(']');
+		return this;
+	}
+	
+	JSONStreamWriter key(String name) {
+		beforeValue();
+		quote(name);
+		buffer.append(':');
+		afterKey = true;
+		return this;
+	}
+	
+	/**
+	 * Writes key with string value. Key is skipped when the value is null,
+	 * same as JSONObject.put does.
+	 * 
+	 * @param name
+	 * @param value
+	 * @return this writer
+	 */
+	JSONStreamWriter field(String name, String value) {
+		if (value != null) {
+			key(name).value(value);
+		}
+		return this;
+	}
+	
+	JSONStreamWriter value(String value) {
+		beforeValue();
+		if (value == null) {
+			buffer.append("null");
+		} else {
+			quote(value);
+		}
+		return flushIfFull();
+	}
+	
+	JSONStreamWriter value(long value) {
+		beforeValue();
+		buffer.append(value);
+		return this;
+	}
+	
+	/**
+	 * Writes value of any type supported by org.json.
+	 * 
+	 * @param value
+	 * @return this writer
+	 */
+	JSONStreamWriter value(Object value) {
+		beforeValue();
+		buffer.append(JSONObject.valueToString(value));
+		return flushIfFull();
+	}
+	
+	/**
+	 * Ends line. Values on the next line are separate documents.
+	 * 
+	 * @return this writer
+	 */
+	JSONStreamWriter newLine() {
+		buffer.append(System.lineSeparator());
+		nonEmpty &= ~1L;
+		return flushIfFull();
+	}
+	
+	/**
+	 * Prints everything that is still buffered.
+	 */
+	void flush() {
+		if (buffer.length() > 0) {
+			out.append(buffer);
+			buffer.setLength(0);
+		}
+	}
+	
+	private void beforeValue() {
+		if (afterKey) {
+			afterKey = false;
+			return;
+		}
+		
+		long bit = 1L << depth;
+		if ((nonEmpty & bit) != 0) {
+			buffer.append(',');
+		}
+		nonEmpty |= bit;
+	}
+	
+	private void open(char bracket) {
+		if (depth == MAX_DEPTH) {
+			throw new IllegalStateException("JSON is nested too deep");
+		}
+		
+		buffer.append(bracket);
+		depth++;
+		nonEmpty &= ~(1L << depth);
+	}
+	
+	private void close(char bracket) {
+		depth--;
+		buffer.append(bracket);
+		flushIfFull();
+	}
+	
+	private JSONStreamWriter flushIfFull() {
+		if (buffer.length() >= BUFFER_SIZE) {
+			flush();
+		}
+		return this;
+	}
+	
+	/**
+	 * Appends quoted string, escaped the same way as JSONObject.quote.
+	 */
+	private void quote(String string) {
+		if (string.isEmpty()) {
+			buffer.append("\"\"");
+			return;
+		}
+		
+		char previous;
+		char current = 0;
+		
+		buffer.append('"');
+		for (int i = 0; i < string.length(); i++) {
+			previous = current;
+			current = string.charAt(i);
+			
+			switch (current) {
+				case '\\':
+				case '"':
+					buffer.append('\\').append(current);
+					break;
+				case '/':
+					if (previous == '<') {
+						buffer.append('\\');
+					}
+					buffer.append(current);
+					break;
+				case '\b':
+					buffer.append("\\b");
+					break;
+				case '\t':
+					buffer.append("\\t");
+					break;
+				case '\n':
+					buffer.append("\\n");
+					break;
+				case '\f':
+					buffer.append("\\f");
+					break;
+				case '\r':
+					buffer.append("\\r");
+					break;
+				default:
+					if (current < ' '
+						|| (current >= '\u0080' && current < '\u00a0')
+						|| (current >= '\u2000' && current < '\u2100')
+					) {
+						String hex = Integer.toHexString(current);
+						buffer.append("\\u");
+						for (int pad = hex.length(); pad < 4; pad++) {
+							buffer.append('0');
+						}
+						buffer.append(hex);
+					} else {
+						buffer.append(current);
+					}
+			}
+		}
+		buffer.append('"');
+	}
+}
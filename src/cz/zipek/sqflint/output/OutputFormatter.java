@@ -1,11 +1,21 @@
 package cz.zipek.sqflint.output;
 
 import cz.zipek.sqflint.linter.SqfFile;
+import java.io.PrintStream;
 
 /**
  *
  * @author Jan Zípek (jan at zipek.cz)
  */
 public interface OutputFormatter {
-	public void print(SqfFile sqfFile);
+	public default void print(SqfFile sqfFile) {
+		print(sqfFile, System.out, System.err);
+	}
+	
+	/**
+	 * @param sqfFile processed file
+	 * @param out stream used for results
+	 * @param err stream used for human readable messages
+	 */
+	public void print(SqfFile sqfFile, PrintStream out, PrintStream err);
 }
@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.output;
+
+import cz.zipek.sqflint.linter.Options;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures time spent in single phases of linting of one file.
+ * Phases can be nested, time of nested phase isn't counted to the enclosing
+ * one, so every phase only contains its own time.
+ *
+ * Disabled trace doesn't do anything, not even read the clock.
+ * Trace isn't thread safe, every file has its own.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class PhaseTrace {
+	public enum Phase {
+		PREPROCESS,
+		LEX,
+		PARSE,
+		ANALYZE,
+		SERIALIZE
+	}
+	
+	private static final PhaseTrace DISABLED = new PhaseTrace(false, false);
+	
+	private final boolean enabled;
+	private final boolean tokens;
+	
+	private final long[] times = new long[Phase.values().length];
+	private final int[] counts = new int[Phase.values().length];
+	
+	private Phase[] running = new Phase[8];
+	private int depth = 0;
+	private long since;
+
+	private PhaseTrace(boolean enabled, boolean tokens) {
+		this.enabled = enabled;
+		this.tokens = tokens;
+	}
+	
+	/**
+	 * @param options
+	 * @return new trace if bench logs are enabled, disabled trace otherwise
+	 */
+	public static PhaseTrace create(Options options) {
+		if (options != null && options.isBenchLogs()) {
+			return new PhaseTrace(true, true);
+		}
+		return DISABLED;
+	}
+	
+	/**
+	 * Creates trace that doesn't measure single tokens, which is the most
+	 * expensive part of tracing. Time spent by reading tokens is then
+	 * counted to parsing.
+	 * 
+	 * @return new trace
+	 */
+	public static PhaseTrace withoutTokens() {
+		return new PhaseTrace(true, false);
+	}
+	
+	/**
+	 * @return shared trace that doesn't measure anything
+	 */
+	public static PhaseTrace disabled() {
+		return DISABLED;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * @return if time spent by reading tokens should be measured
+	 */
+	public boolean isTokensEnabled() {
+		return tokens;
+	}
+	
+	/**
+	 * Starts measuring specified phase, current phase is paused.
+	 * 
+	 * @param phase 
+	 */
+	public void enter(Phase phase) {
+		if (!enabled) {
+			return;
+		}
+		
+		long now = System.nanoTime();
+		if (depth > 0) {
+			times[running[depth - 1].ordinal()] += now - since;
+		}
+		if (depth == running.length) {
+			running = Arrays.copyOf(running, depth * 2);
+		}
+		running[depth++] = phase;
+		counts[phase.ordinal()]++;
+		since = now;
+	}
+	
+	/**
+	 * Stops measuring current phase, paused phase continues.
+	 */
+	public void exit() {
+		if (!enabled || depth == 0) {
+			return;
+		}
+		
+		long now = System.nanoTime();
+		times[running[--depth].ordinal()] += now - since;
+		since = now;
+	}
+	
+	/**
+	 * @param phase
+	 * @return time spent in phase in nanoseconds
+	 */
+	public long getTime(Phase phase) {
+		return times[phase.ordinal()];
+	}
+	
+	/**
+	 * @param phase
+	 * @return how many times was the phase entered
+	 */
+	public int getCount(Phase phase) {
+		return counts[phase.ordinal()];
+	}
+	
+	/**
+	 * Prints times of all phases as single line to stderr.
+	 * 
+	 * @param source file name, can be null
+	 */
+	public void report(String source) {
+		if (!enabled) {
+			return;
+		}
+		
+		StringBuilder line = new StringBuilder("[trace] ");
+		line.append(source != null ? source : "<stdin>");
+		
+		long total = 0;
+		for (Phase phase : Phase.values()) {
+			total += times[phase.ordinal()];
+			line.append(String.format(
+				Locale.ROOT,
+				" %s=%.3fms",
+				phase.name().toLowerCase(Locale.ROOT),
+				times[phase.ordinal()] / 1e6
+			));
+			if (phase == Phase.LEX) {
+				line.append(" (").append(counts[phase.ordinal()]).append(" tokens)");
+			}
+		}
+		line.append(String.format(Locale.ROOT, " total=%.3fms", total / 1e6));
+		
+		System.err.println(line);
+	}
+}
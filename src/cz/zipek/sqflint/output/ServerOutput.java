@@ -23,14 +23,10 @@
  */
 package cz.zipek.sqflint.output;
 
-import cz.zipek.sqflint.linter.Linter;
 import cz.zipek.sqflint.linter.SqfFile;
 
+import java.io.PrintStream;
 import java.util.Date;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import org.json.JSONException;
-import org.json.JSONStringer;
 
 /**
  *
@@ -38,33 +34,52 @@ import org.json.JSONStringer;
  */
 public class ServerOutput extends JSONOutput {
 	private final String filename;
+	private final Object id;
 	
 	public ServerOutput(String filename) {
+		this(filename, null);
+	}
+	
+	/**
+	 * @param filename processed file
+	 * @param id client message id echoed back in response, can be null
+	 */
+	public ServerOutput(String filename, Object id) {
 		this.filename = filename;
+		this.id = id;
 	}
 	
+	/**
+	 * Prints whole response on single line. Response is written while
+	 * holding the stream lock, so responses of files printed from multiple
+	 * threads don't mix.
+	 */
 	@Override
-	public void print(SqfFile sqfFile) {
-		try {
-			System.out.println(
-				new JSONStringer()
-					.object()
-						.key("file")
-						.value(this.filename)
-						.key("messages")
-						.value(build(sqfFile))
-						.key("timeneeded")
-						.value(
-							sqfFile.getLinter() != null && sqfFile.getLinter().getStartTime() != null ?
-								new Date().getTime() - sqfFile.getLinter().getStartTime().getTime()
-								:
-								0
-						)
-					.endObject()
+	public void print(SqfFile sqfFile, PrintStream out, PrintStream err) {
+		synchronized (out) {
+			JSONStreamWriter writer = new JSONStreamWriter(out);
+			writer.beginObject();
+			
+			if (id != null) {
+				writer.key("id").value(id);
+			}
+			
+			writer.key("file").value(filename);
+			
+			writer.key("messages").beginArray();
+			writeMessages(writer, sqfFile, false);
+			writer.endArray();
+			
+			writer.key("timeneeded").value(
+				sqfFile.getLinter() != null && sqfFile.getLinter().getStartTime() != null ?
+					new Date().getTime() - sqfFile.getLinter().getStartTime().getTime()
+					:
+					0
 			);
-			System.out.flush();
-		} catch (JSONException ex) {
-			Logger.getLogger(ServerOutput.class.getName()).log(Level.SEVERE, null, ex);
+			
+			writer.endObject().newLine();
+			writer.flush();
+			out.flush();
 		}
 	}
 }
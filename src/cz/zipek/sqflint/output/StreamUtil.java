@@ -2,6 +2,8 @@ package cz.zipek.sqflint.output;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -39,4 +41,24 @@ public class StreamUtil {
         return new BufferedReader(new InputStreamReader(input)).lines().collect(Collectors.joining("\n"));
 	}
 
+    /**
+     * Reads whole file into string, same way as streamToString does.
+     *
+     * @param path
+     * @return
+     * @throws FileNotFoundException
+     */
+    public static String fileToString(String path) throws FileNotFoundException {
+        InputStream input = new FileInputStream(path);
+        try {
+            return streamToString(input);
+        } finally {
+            try {
+                input.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
 }
\ No newline at end of file
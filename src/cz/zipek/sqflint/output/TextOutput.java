@@ -2,27 +2,45 @@ package cz.zipek.sqflint.output;
 
 import cz.zipek.sqflint.linter.Linter;
 import cz.zipek.sqflint.linter.SqfFile;
+import java.io.PrintStream;
 
 /**
  *
  * @author Jan Zípek (jan at zipek.cz)
  */
 public class TextOutput implements OutputFormatter {
-	
+	private final String prefix;
+
+	public TextOutput() {
+		this(null);
+	}
+
+	/**
+	 * @param filename file name printed before every message, can be null
+	 */
+	public TextOutput(String filename) {
+		this.prefix = filename != null ? filename + ": " : "";
+	}
+
 	@Override
-	public void print(SqfFile sqfFile) {		
+	public void print(SqfFile sqfFile, PrintStream out, PrintStream err) {
+		if (sqfFile.getPreProcessorError() != null) {
+			err.println(prefix + sqfFile.getPreProcessorError().toString());
+			return;
+		}
+
 		if (sqfFile.getLinter().getOptions().isOutputVariables()) {
-			System.err.println("You can't output variables info in text mode.");
+			err.println("You can't output variables info in text mode.");
 		}
 		
 		// Print errors
 		sqfFile.getLinter().getErrors().stream().forEach((e) -> {
-			System.err.println(e.getMessage());
+			err.println(prefix + e.getMessage());
 		});
 		
 		// Print warnings
 		sqfFile.getLinter().getWarnings().stream().forEach((e) -> {
-			System.err.println(e.toString());
+			err.println(prefix + e.toString());
 		});
 	}
 	
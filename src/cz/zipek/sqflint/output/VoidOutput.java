@@ -25,6 +25,7 @@ package cz.zipek.sqflint.output;
 
 import cz.zipek.sqflint.linter.Linter;
 import cz.zipek.sqflint.linter.SqfFile;
+import java.io.PrintStream;
 
 /**
  * Void output formatter for testing purposes.
@@ -32,7 +33,7 @@ import cz.zipek.sqflint.linter.SqfFile;
  */
 public class VoidOutput implements OutputFormatter {
 	@Override
-	public void print(SqfFile sqfFile) {
+	public void print(SqfFile sqfFile, PrintStream out, PrintStream err) {
 		
 	}
 }
@@ -0,0 +1,252 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.parser;
+
+import java.io.IOException;
+
+/**
+ * Char stream reading directly from preprocessed text.
+ * Unlike SimpleCharStream, input isn't encoded into bytes and decoded back
+ * into separate buffer, characters are taken from the text as they are.
+ *
+ * Line and column are counted the same way SimpleCharStream does it. They
+ * are only kept for the characters of current token, which is as far as the
+ * token manager ever backs up.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class StringCharStream implements CharStream {
+	private final CharSequence input;
+
+	private int tabSize = 1;
+	private boolean trackLineColumn = true;
+
+	// Index of last returned character
+	private int position;
+	// Index of furthest character that was read
+	private int furthest;
+	private int tokenBegin;
+
+	private int line;
+	private int column;
+	private boolean prevCharIsCR = false;
+	private boolean prevCharIsLF = false;
+
+	// Line and column of characters from windowStart to furthest
+	private int windowStart;
+	private int[] lines = new int[256];
+	private int[] columns = new int[256];
+
+	public StringCharStream(CharSequence input) {
+		this(input, 0, 1, 0);
+	}
+
+	/**
+	 * Creates stream starting in the middle of the text.
+	 * Positions are counted as if the character before start was at
+	 * specified line and column.
+	 *
+	 * @param input
+	 * @param start index of first character to be read
+	 * @param line line of character before start
+	 * @param column column of character before start
+	 */
+	public StringCharStream(CharSequence input, int start, int line, int column) {
+		this.input = input;
+		this.line = line;
+		this.column = column;
+
+		position = furthest = tokenBegin = windowStart = start - 1;
+
+		if (start > 0) {
+			lines[0] = line;
+			columns[0] = column;
+		}
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		if (position < furthest) {
+			return input.charAt(++position);
+		}
+
+		if (position + 1 >= input.length()) {
+			throw new IOException();
+		}
+
+		char c = input.charAt(++position);
+		furthest = position;
+		updateLineColumn(c);
+
+		return c;
+	}
+
+	@Override
+	public char BeginToken() throws IOException {
+		// Only characters of the new token are needed from now on
+		int drop = position - windowStart;
+		if (drop > 0) {
+			System.arraycopy(lines, drop, lines, 0, furthest - position + 1);
+			System.arraycopy(columns, drop, columns, 0, furthest - position + 1);
+			windowStart = position;
+		}
+
+		tokenBegin = -1;
+		try {
+			char c = readChar();
+			tokenBegin = position;
+			return c;
+		} catch (IOException ex) {
+			// Same as SimpleCharStream, EOF is placed at the last character
+			tokenBegin = position;
+			throw ex;
+		}
+	}
+
+	private void updateLineColumn(char c) {
+		column++;
+
+		if (prevCharIsLF) {
+			prevCharIsLF = false;
+			line += (column = 1);
+		} else if (prevCharIsCR) {
+			prevCharIsCR = false;
+			if (c == '\n') {
+				prevCharIsLF = true;
+			} else {
+				line += (column = 1);
+			}
+		}
+
+		switch (c) {
+			case '\r':
+				prevCharIsCR = true;
+				break;
+			case '\n':
+				prevCharIsLF = true;
+				break;
+			case '\t':
+				column--;
+				column += (tabSize - (column % tabSize));
+				break;
+		}
+
+		int index = position - windowStart;
+		if (index >= lines.length) {
+			int[] newLines = new int[lines.length * 2];
+			int[] newColumns = new int[columns.length * 2];
+			System.arraycopy(lines, 0, newLines, 0, lines.length);
+			System.arraycopy(columns, 0, newColumns, 0, columns.length);
+			lines = newLines;
+			columns = newColumns;
+		}
+
+		lines[index] = line;
+		columns[index] = column;
+	}
+
+	private int lineAt(int index) {
+		return index < windowStart || index < 0 ? 0 : lines[index - windowStart];
+	}
+
+	private int columnAt(int index) {
+		return index < windowStart || index < 0 ? 0 : columns[index - windowStart];
+	}
+
+	@Override
+	@Deprecated
+	public int getColumn() {
+		return columnAt(position);
+	}
+
+	@Override
+	@Deprecated
+	public int getLine() {
+		return lineAt(position);
+	}
+
+	@Override
+	public int getEndColumn() {
+		return columnAt(position);
+	}
+
+	@Override
+	public int getEndLine() {
+		return lineAt(position);
+	}
+
+	@Override
+	public int getBeginColumn() {
+		return columnAt(tokenBegin);
+	}
+
+	@Override
+	public int getBeginLine() {
+		return lineAt(tokenBegin);
+	}
+
+	@Override
+	public void backup(int amount) {
+		position -= amount;
+	}
+
+	@Override
+	public String GetImage() {
+		return input.subSequence(tokenBegin, position + 1).toString();
+	}
+
+	@Override
+	public char[] GetSuffix(int len) {
+		char[] result = new char[len];
+		int start = position - len + 1;
+		for (int i = 0; i < len; i++) {
+			result[i] = input.charAt(start + i);
+		}
+		return result;
+	}
+
+	@Override
+	public void Done() {
+	}
+
+	@Override
+	public void setTabSize(int size) {
+		tabSize = size;
+	}
+
+	@Override
+	public int getTabSize() {
+		return tabSize;
+	}
+
+	@Override
+	public boolean getTrackLineColumn() {
+		return trackLineColumn;
+	}
+
+	@Override
+	public void setTrackLineColumn(boolean trackLineColumn) {
+		this.trackLineColumn = trackLineColumn;
+	}
+}
@@ -0,0 +1,391 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.preprocessor;
+
+import cz.zipek.sqflint.linter.Options;
+import cz.zipek.sqflint.linter.Warning;
+import cz.zipek.sqflint.output.StreamUtil;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Process-wide cache of preprocessed include files.
+ * Stores macros, includes and warnings produced by an included file (and
+ * everything it includes), so the same header chain doesn't have to be read
+ * and preprocessed again for every linted file.
+ *
+ * Entries are validated against modification time and size of every file
+ * they were built from. When those differ, content hash is compared before
+ * the entry is thrown away.
+ *
+ * Conditional directives in included file can depend on macros defined
+ * before the include. Every entry remembers state of those macros and is
+ * only used when the including file has them in the same state.
+ *
+ * Only {@link #MAX_FILES} most recently used files are kept, each with at
+ * most {@link #MAX_VARIANTS} variants. Outdated variants of a file are
+ * dropped whenever new variant of the file is stored.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class SQFIncludeCache {
+	public static final int MAX_FILES = 1024;
+	public static final int MAX_VARIANTS = 8;
+	
+	private static final SQFIncludeCache shared = new SQFIncludeCache();
+
+	private final Map<String, List<Entry>> entries;
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public SQFIncludeCache() {
+		this(MAX_FILES);
+	}
+	
+	/**
+	 * @param maxFiles number of included files to keep
+	 */
+	public SQFIncludeCache(int maxFiles) {
+		this.entries = new LinkedHashMap<String, List<Entry>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, List<Entry>> eldest) {
+				return size() > maxFiles;
+			}
+		};
+	}
+
+	/**
+	 * @return cache shared by all preprocessors in this process
+	 */
+	public static SQFIncludeCache getShared() {
+		return shared;
+	}
+
+	/**
+	 * Loads valid entry for specified file.
+	 *
+	 * @param path resolved path of included file
+	 * @param options options used to preprocess the file
+	 * @param defined tells if macro is defined in the including file
+	 * @return cached entry or null if there is none or it's outdated
+	 */
+	Entry get(Path path, Options options, Predicate<String> defined) {
+		List<Entry> variants;
+		synchronized (entries) {
+			variants = entries.get(buildKey(path, options));
+		}
+		
+		// Files are checked outside of the lock
+		if (variants != null) {
+			for (Entry entry : variants) {
+				if (!entry.isValid()) {
+					variants.remove(entry);
+				} else if (entry.matches(defined)) {
+					hits.increment();
+					return entry;
+				}
+			}
+		}
+
+		misses.increment();
+		return null;
+	}
+
+	void put(Path path, Options options, Entry entry) {
+		List<Entry> variants;
+		synchronized (entries) {
+			variants = entries.computeIfAbsent(buildKey(path, options), (key) -> new CopyOnWriteArrayList<>());
+		}
+		
+		// Outdated variant wouldn't be dropped until it's looked up again
+		variants.removeIf((variant) -> variant.conditions.equals(entry.conditions) || !variant.isValid());
+		variants.add(entry);
+		
+		while (variants.size() > MAX_VARIANTS) {
+			variants.remove(0);
+		}
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @return number of includes loaded from cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of includes that had to be preprocessed
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public int size() {
+		int size = 0;
+		synchronized (entries) {
+			for (List<Entry> variants : entries.values()) {
+				size += variants.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Include results depend on include prefixes (used to resolve nested
+	 * includes) and path checking (which produces warnings).
+	 */
+	private String buildKey(Path path, Options options) {
+		return path.toAbsolutePath().normalize().toString()
+			+ "|" + options.isCheckPaths()
+			+ "|" + new TreeMap<>(options.getIncludePaths()).toString();
+	}
+
+	/**
+	 * Computes hash of file contents.
+	 *
+	 * @param contents
+	 * @return hex encoded hash
+	 */
+	public static String hash(String contents) {
+		return hash(contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Computes hash of binary data.
+	 *
+	 * @param data
+	 * @return hex encoded hash
+	 */
+	public static String hash(byte[] data) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+
+		StringBuilder result = new StringBuilder();
+		for (byte b : digest.digest(data)) {
+			result.append(String.format("%02x", b));
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * Single macro definition (or #undef) produced by included file.
+	 */
+	static class Define {
+		final String name;
+		final String arguments;
+		final String source;
+		final int line;
+		final SQFMacroDefinition definition;
+		final boolean undefine;
+
+		Define(String name, String arguments, String source, int line, SQFMacroDefinition definition) {
+			this(name, arguments, source, line, definition, false);
+		}
+
+		private Define(String name, String arguments, String source, int line, SQFMacroDefinition definition, boolean undefine) {
+			this.name = name;
+			this.arguments = arguments;
+			this.source = source;
+			this.line = line;
+			this.definition = definition;
+			this.undefine = undefine;
+		}
+
+		static Define undefine(String name, String source, int line) {
+			return new Define(name, null, source, line, null, true);
+		}
+	}
+
+	/**
+	 * State of a file at the time it was preprocessed.
+	 * Missing files are tracked too, as they can appear later.
+	 */
+	static class FileStamp {
+		private final Path path;
+		private final boolean exists;
+		private final String hash;
+		private volatile long modified;
+		private volatile long size;
+
+		private FileStamp(Path path, boolean exists, long modified, long size, String hash) {
+			this.path = path;
+			this.exists = exists;
+			this.modified = modified;
+			this.size = size;
+			this.hash = hash;
+		}
+
+		static FileStamp missing(Path path) {
+			return new FileStamp(path, false, -1, -1, null);
+		}
+
+		static FileStamp of(Path path, String contents) {
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				return new FileStamp(
+					path,
+					true,
+					attributes.lastModifiedTime().toMillis(),
+					attributes.size(),
+					hash(contents)
+				);
+			} catch (IOException ex) {
+				// Stamp that will never be valid
+				return new FileStamp(path, true, -1, -1, null);
+			}
+		}
+
+		Path getPath() {
+			return path;
+		}
+
+		/**
+		 * @return hash of file contents, null if the file is missing or can't be read
+		 */
+		String getHash() {
+			return hash;
+		}
+
+		boolean isValid() {
+			// Single stat for every file of the include chain
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			} catch (IOException ex) {
+				return !exists;
+			}
+
+			if (attributes.isDirectory()) {
+				return !exists;
+			}
+
+			if (!exists || hash == null) {
+				return false;
+			}
+
+			try {
+				long currentModified = attributes.lastModifiedTime().toMillis();
+				long currentSize = attributes.size();
+
+				if (currentModified == modified && currentSize == size) {
+					return true;
+				}
+
+				// File was touched, check if the contents actually changed
+				if (hash.equals(hash(StreamUtil.fileToString(path.toString())))) {
+					modified = currentModified;
+					size = currentSize;
+					return true;
+				}
+			} catch (IOException ex) {
+				return false;
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Result of preprocessing single included file.
+	 */
+	static class Entry {
+		private final List<Define> defines;
+		private final List<SQFInclude> includes;
+		private final List<Warning> warnings;
+		private final List<FileStamp> files;
+		private final Map<String, Boolean> conditions;
+
+		Entry(List<Define> defines, List<SQFInclude> includes, List<Warning> warnings, List<FileStamp> files, Map<String, Boolean> conditions) {
+			this.defines = Collections.unmodifiableList(new ArrayList<>(defines));
+			this.includes = Collections.unmodifiableList(new ArrayList<>(includes));
+			this.warnings = Collections.unmodifiableList(new ArrayList<>(warnings));
+			this.files = Collections.unmodifiableList(new ArrayList<>(files));
+			this.conditions = Collections.unmodifiableMap(new TreeMap<>(conditions));
+		}
+
+		/**
+		 * @param defined tells if macro is defined in the including file
+		 * @return if macros used by conditions are in the same state
+		 */
+		boolean matches(Predicate<String> defined) {
+			for (Map.Entry<String, Boolean> condition : conditions.entrySet()) {
+				if (defined.test(condition.getKey()) != condition.getValue()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		boolean isValid() {
+			for (FileStamp file : files) {
+				if (!file.isValid()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		List<Define> getDefines() {
+			return defines;
+		}
+
+		List<SQFInclude> getIncludes() {
+			return includes;
+		}
+
+		List<Warning> getWarnings() {
+			return warnings;
+		}
+
+		List<FileStamp> getFiles() {
+			return files;
+		}
+	}
+}
@@ -33,7 +33,7 @@ import java.util.List;
  */
 public class SQFMacro {
 	private final String name;
-	private final String arguments;
+	private String arguments;
 	private final List<SQFMacroDefinition> definitions = new ArrayList<>();
 	private final String source;
 	private final int line;
@@ -46,7 +46,11 @@ public class SQFMacro {
 	}
 
 	public void addDefinition(String filename, Token token, String value) {
-		definitions.add(new SQFMacroDefinition(filename, token, value));
+		addDefinition(new SQFMacroDefinition(filename, token, value));
+	}
+	
+	public void addDefinition(SQFMacroDefinition definition) {
+		definitions.add(definition);
 	}
 	
 	/**
@@ -77,6 +81,16 @@ public class SQFMacro {
 		return arguments;
 	}
 
+	/**
+	 * Changes argument list of macro that was undefined and is being
+	 * defined again.
+	 * 
+	 * @param arguments new argument list, null if macro has none
+	 */
+	public void setArguments(String arguments) {
+		this.arguments = arguments;
+	}
+
 	/**
 	 * @return the line
 	 */
@@ -97,7 +111,7 @@ public class SQFMacro {
                 return true;
         }
                
-        private boolean isIdentifierChar(char f) {
+        static boolean isIdentifierChar(char f) {
                 return Character.isLetterOrDigit(f) || f == '_';
 	}
 }
@@ -34,10 +34,26 @@ public class SQFMacroDefinition {
 	private final Token token;
 	private final String value;
 
+	private final SQFMacroTemplate template;
+
 	public SQFMacroDefinition(String filename, Token token, String value) {
+		this(filename, token, value, null);
+	}
+
+	/**
+	 * Value of argumented macro is compiled for argument substitution right
+	 * away, so expansions don't have to parse it.
+	 *
+	 * @param filename
+	 * @param token
+	 * @param value
+	 * @param arguments argument list of the macro, null if it has none
+	 */
+	public SQFMacroDefinition(String filename, Token token, String value, String arguments) {
 		this.filename = filename;
 		this.token = token;
 		this.value = value;
+		this.template = arguments != null ? SQFMacroTemplate.compile(value, arguments) : null;
 	}
 
 	/**
@@ -60,4 +76,11 @@ public class SQFMacroDefinition {
 	public String getFilename() {
 		return filename;
 	}
+
+	/**
+	 * @return value compiled for argument substitution, null if the macro has no arguments
+	 */
+	SQFMacroTemplate getTemplate() {
+		return template;
+	}
 }
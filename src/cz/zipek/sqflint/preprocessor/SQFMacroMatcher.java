@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.preprocessor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Character trie of macro names.
+ * Finds the longest macro at specified position of a line in single walk,
+ * instead of comparing every known macro.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class SQFMacroMatcher {
+	private final Node root = new Node();
+
+	/**
+	 * Registers new macro. Macros with the same name are kept only once.
+	 * Macro that was removed can be registered again.
+	 *
+	 * @param macro
+	 */
+	public void add(SQFMacro macro) {
+		Node node = root;
+		for (int i = 0; i < macro.getName().length(); i++) {
+			node = node.children.computeIfAbsent(macro.getName().charAt(i), (c) -> new Node());
+		}
+		if (node.macro == null) {
+			node.macro = macro;
+		}
+	}
+
+	/**
+	 * Removes macro with specified name, used by #undef.
+	 *
+	 * @param name
+	 */
+	public void remove(String name) {
+		Node node = find(name);
+		if (node != null) {
+			node.macro = null;
+		}
+	}
+
+	/**
+	 * @param name
+	 * @return if there is macro with specified name
+	 */
+	public boolean contains(String name) {
+		Node node = find(name);
+		return node != null && node.macro != null;
+	}
+
+	private Node find(String name) {
+		Node node = root;
+		for (int i = 0; i < name.length() && node != null; i++) {
+			node = node.children.get(name.charAt(i));
+		}
+		return node;
+	}
+
+	/**
+	 * Finds the longest macro which name starts at specified index and
+	 * isn't part of longer identifier. Same rules as SQFMacro.matchAt apply.
+	 *
+	 * @param line
+	 * @param index
+	 * @return matched macro or null
+	 */
+	public SQFMacro matchAt(String line, int index) {
+		return matchAt(line, 0, line.length(), index);
+	}
+
+	/**
+	 * Same as matchAt, but only looks at part of the text.
+	 *
+	 * @param text
+	 * @param start start of the line in text
+	 * @param end end of the line in text
+	 * @param index position in text
+	 * @return matched macro or null
+	 */
+	public SQFMacro matchAt(CharSequence text, int start, int end, int index) {
+		// We are in the middle of an identifier
+		if (index > start && SQFMacro.isIdentifierChar(text.charAt(index - 1))) {
+			return null;
+		}
+
+		SQFMacro result = null;
+		Node node = root;
+		int position = index;
+
+		// Macro has to be followed by at least one character
+		while (position < end - 1) {
+			node = node.children.get(text.charAt(position));
+			if (node == null) {
+				break;
+			}
+
+			position++;
+
+			if (node.macro != null && !SQFMacro.isIdentifierChar(text.charAt(position))) {
+				result = node.macro;
+			}
+		}
+
+		return result;
+	}
+
+	private static class Node {
+		private final Map<Character, Node> children = new HashMap<>();
+		private SQFMacro macro;
+	}
+}
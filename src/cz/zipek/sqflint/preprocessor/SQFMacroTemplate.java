@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.preprocessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Value of argumented macro split into literal parts and argument slots.
+ * Compiled once for every definition, expanding the macro is then single
+ * pass over the parts.
+ *
+ * Argument is recognized when it's not surrounded by letters, digits or
+ * underscores. #arg is replaced by quoted argument value and ## is removed.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+class SQFMacroTemplate {
+	private final String arguments;
+	private final int argumentCount;
+
+	// Literal i is placed before slot i, last literal is after all slots
+	private final String[] literals;
+	private final int[] slots;
+	private final boolean[] stringify;
+
+	private SQFMacroTemplate(String arguments, int argumentCount, List<String> literals, List<Integer> slots, List<Boolean> stringify) {
+		this.arguments = arguments;
+		this.argumentCount = argumentCount;
+		this.literals = literals.toArray(new String[literals.size()]);
+		this.slots = new int[slots.size()];
+		this.stringify = new boolean[stringify.size()];
+
+		for (int i = 0; i < this.slots.length; i++) {
+			this.slots[i] = slots.get(i);
+			this.stringify[i] = stringify.get(i);
+		}
+	}
+
+	/**
+	 * @param value macro value, can be null
+	 * @param arguments comma separated argument names
+	 * @return compiled template
+	 */
+	static SQFMacroTemplate compile(String value, String arguments) {
+		String[] names = arguments.split(",");
+		for (int i = 0; i < names.length; i++) {
+			names[i] = names[i].trim();
+		}
+
+		if (value == null) {
+			value = "";
+		}
+
+		List<String> literals = new ArrayList<>();
+		List<Integer> slots = new ArrayList<>();
+		List<Boolean> stringify = new ArrayList<>();
+
+		StringBuilder literal = new StringBuilder();
+		int index = 0;
+		while (index < value.length()) {
+			int slot = -1;
+			if (index == 0 || !isNameChar(value.charAt(index - 1))) {
+				slot = matchArgument(value, index, names);
+			}
+
+			if (slot < 0) {
+				literal.append(value.charAt(index));
+				index++;
+				continue;
+			}
+
+			// Single # before argument turns it into string
+			boolean quote = index > 0 && value.charAt(index - 1) == '#'
+				&& (index < 2 || value.charAt(index - 2) != '#');
+			if (quote) {
+				literal.setLength(literal.length() - 1);
+			}
+
+			literals.add(removeConcat(literal));
+			slots.add(slot);
+			stringify.add(quote);
+
+			literal.setLength(0);
+			index += names[slot].length();
+		}
+
+		literals.add(removeConcat(literal));
+
+		return new SQFMacroTemplate(arguments, names.length, literals, slots, stringify);
+	}
+
+	/**
+	 * Finds argument starting at specified index.
+	 *
+	 * @return index of the argument or -1
+	 */
+	private static int matchArgument(String value, int index, String[] names) {
+		for (int i = 0; i < names.length; i++) {
+			String name = names[i];
+			int end = index + name.length();
+
+			if (name.isEmpty() || !value.startsWith(name, index)) {
+				continue;
+			}
+
+			if (end == value.length() || !isNameChar(value.charAt(end))) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private static boolean isNameChar(char c) {
+		return (c >= 'a' && c <= 'z')
+			|| (c >= 'A' && c <= 'Z')
+			|| (c >= '0' && c <= '9')
+			|| c == '_';
+	}
+
+	private static String removeConcat(CharSequence text) {
+		return text.toString().replace("##", "");
+	}
+
+	/**
+	 * Builds macro value with specified argument values.
+	 *
+	 * @param values argument values, in the order of arguments
+	 * @return expanded value
+	 */
+	String expand(List<String> values) {
+		StringBuilder result = new StringBuilder();
+
+		for (int i = 0; i < slots.length; i++) {
+			result.append(literals[i]);
+
+			String argument = values.get(slots[i]).trim();
+			if (stringify[i]) {
+				result.append('"').append(argument).append('"');
+			} else {
+				result.append(argument);
+			}
+		}
+		result.append(literals[slots.length]);
+
+		// Arguments and their surroundings can form new concatenations
+		if (result.indexOf("##") >= 0) {
+			return result.toString().replace("##", "");
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * @return argument list this template was compiled for
+	 */
+	String getArguments() {
+		return arguments;
+	}
+
+	/**
+	 * @return number of arguments the macro expects
+	 */
+	int getArgumentCount() {
+		return argumentCount;
+	}
+}
@@ -28,22 +28,25 @@ import cz.zipek.sqflint.linter.Linter;
 import cz.zipek.sqflint.linter.Options;
 import cz.zipek.sqflint.linter.PreProcessorError;
 import cz.zipek.sqflint.linter.Warning;
-import cz.zipek.sqflint.output.LogUtil;
 import cz.zipek.sqflint.output.StreamUtil;
 import cz.zipek.sqflint.parser.Token;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 /**
  *
@@ -52,15 +55,36 @@ import java.util.regex.Pattern;
 public class SQFPreprocessor {
 	private final Map<String, SQFMacro> macros = new HashMap<>();
 	private final List<SQFInclude> includes = new ArrayList<>();
-	private final List<SQFMacro> sortedMacros = new ArrayList<>();
+	private final SQFMacroMatcher macroMatcher = new SQFMacroMatcher();
 	
 	private final List<Warning> warnings = new ArrayList<>();
 	private final Options options;
 	
+	private final SQFIncludeCache includeCache;
+	private final List<SQFIncludeCache.Define> defines = new ArrayList<>();
+	private final List<SQFIncludeCache.FileStamp> includedFiles = new ArrayList<>();
+	
+	// Open #ifdef and #ifndef blocks, innermost first
+	private final Deque<Condition> conditions = new ArrayDeque<>();
+	// Macros removed by #undef
+	private final Set<String> undefined = new HashSet<>();
+	
+	// Macros defined before this file was included
+	private Predicate<String> outer;
+	private final Map<String, Boolean> outerConditions = new HashMap<>();
+	
 	private int readUntilIndex;
 	
+	private long templateHits = 0;
+	private long templateMisses = 0;
+	
 	public SQFPreprocessor(Options options) {
+		this(options, SQFIncludeCache.getShared());
+	}
+	
+	public SQFPreprocessor(Options options, SQFIncludeCache includeCache) {
 		this.options = options;
+		this.includeCache = includeCache;
 	}
 	
 	public String process(
@@ -71,397 +95,765 @@ public class SQFPreprocessor {
 		throws SQFPreproccessException
 	{
 		Path root = Paths.get(source).toAbsolutePath().getParent();
-		
-		LogUtil.benchLog(options, this, source, "Process Starting");
 
 		// Fixes escaped newlines
-		int index = 0;
-		while (index + 2 < input.length()) {
-			if (input.substring(index, index + 2).equals("\\\n")) {
-				int lines = 0;
-				int end = index;
-				while (end < input.length()) {
-					if (end < input.length() - 1 && input.substring(end, end + 2).equals("\\\n")) {
-						lines++;
-						end += 2;
-					}
-					if (input.charAt(end) == '\n') {
-						break;
-					}
-					end++;
-				}
-				
-				input = input.substring(0, index) +
-					input.substring(index + 2, end).replaceAll("\\\\\n", "") +
-					String.join("", Collections.nCopies(lines, "\n")) +
-					input.substring(end);
+		input = joinEscapedLines(input);
+		
+		// Carriage returns are ignored completely
+		String text = input.indexOf('\r') >= 0 ? input.replace("\r", "") : input;
+		
+		// Find lines, trailing empty lines are dropped (same as String.split)
+		int[] lineStarts = new int[16];
+		int lineCount = 0;
+		int lineStart = 0;
+		while (true) {
+			if (lineCount + 1 >= lineStarts.length) {
+				lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
 			}
+			lineStarts[lineCount++] = lineStart;
 			
-			index++;
+			int lineEnd = text.indexOf('\n', lineStart);
+			if (lineEnd < 0) {
+				break;
+			}
+			lineStart = lineEnd + 1;
+		}
+		lineStarts[lineCount] = text.length() + 1;
+		if (lineCount > 1) {
+			while (lineCount > 0 && lineStarts[lineCount] - lineStarts[lineCount - 1] == 1) {
+				lineCount--;
+			}
 		}
-
-		LogUtil.benchLog(options, this, source, "Linefix done");
-		
-		String[] lines = input
-			.replaceAll("\r", "")
-			.split("\n");
 		
-		int lineIndex = 0;
+		// Line ending with escaped line end, waiting for the following line
+		String joined = null;
+		int joinedLines = 0;
 		
-		Pattern whitespaceAtStart = Pattern.compile("^\\s*");
-		Pattern doubleWhitespace = Pattern.compile("\\s{1,}");
-		Pattern comments = Pattern.compile("(\\/\\*.*?\\*\\/)|(\\/\\/.*)");
+		StringBuilder output = new StringBuilder(text.length());
+		StringBuilder lineUpdated = new StringBuilder();
 		
+		int lineIndex = 0;
 		boolean inComment = false;
 
-		int parsedLines = 0;
-                
-		for (String line : lines) {
-
-			LogUtil.benchLog(
-				options,
-				this,
-				source,
-				"Line: " + Integer.toString(++parsedLines)
-					+ " "
-					+ (line != null ?
-						line // .substring(0, Math.min(20, Math.max(0, line.length() - 1)))
-						:
-						""
-					)
-			);
-
-			String lineUpdated = line;
+		for (int parsedLines = 1; parsedLines <= lineCount; parsedLines++) {
+			// Joined lines are kept empty after the result, so line numbers don't change
+			if (joined == null) {
+				for (; joinedLines > 0; joinedLines--) {
+					appendLine(output, lineIndex++, "", 0, 0);
+				}
+			}
+			
+			// Current line is either part of the input or joined with previous lines
+			String lineText = text;
+			int start = lineStarts[parsedLines - 1];
+			int end = lineStarts[parsedLines] - 1;
+			if (joined != null) {
+				lineText = joined + " " + text.substring(start, end);
+				start = 0;
+				end = lineText.length();
+				joined = null;
+			}
+			
+			int contentStart = start;
 			
 			// @TODO: Escapes in comments?
 			if (inComment) {
-				if (lineUpdated.contains("*/")) {
-					lineUpdated = lineUpdated
-						.substring(lineUpdated.indexOf("*/") + 2);
+				int commentEnd = indexOfCommentEnd(lineText, start, end);
+				if (commentEnd >= 0) {
+					contentStart = commentEnd + 2;
 					inComment = false;
 				} else {
-					lines[lineIndex++] = ""; // empty line
+					// empty line
+					appendLine(output, lineIndex++, "", 0, 0);
 					continue;
 				}
 			}
-
-			// Remove whitespaces at beginning
-			lineUpdated = whitespaceAtStart
-				.matcher(lineUpdated)
-				.replaceAll("");
-			
-			// Remove doubled whitespaces
-			lineUpdated = doubleWhitespace
-				.matcher(lineUpdated)
-				.replaceAll(" ");
 			
-			// Remove comments
-			lineUpdated = comments
-				.matcher(lineUpdated)
-				.replaceAll("");
-			
-			// Handle multiline comments
-			// @TODO: Escapes in comments?
-			// Is there beginning of the comment and not the end on this line?
-			if (lineUpdated.contains("/*")) {
-				// Remove everyhing past the comment start
-				lineUpdated = lineUpdated
-					.substring(0, lineUpdated.indexOf("/*"));
+			// Line without whitespaces at beginning, doubled whitespaces and comments
+			lineUpdated.setLength(0);
+			if (stripLine(lineText, contentStart, end, lineUpdated)) {
 				// Next line is inside comment
 				inComment = true;
 			}
 			
-			// Remove tabs
-			lineUpdated = lineUpdated.replaceAll("\t", " ");
-
 			// replace escaped line ends
-			if (!inComment && (lineUpdated.endsWith("\\") || lineUpdated.endsWith("\\\n"))) {
-				lines[lineIndex] = "***?***"; // marker to filter later
-				lines[lineIndex + 1] = lineUpdated + " " + lines[lineIndex + 1];
-				continue;
+			if (!inComment && lineUpdated.length() > 0 && lineUpdated.charAt(lineUpdated.length() - 1) == '\\') {
+				lineUpdated.setLength(lineUpdated.length() - 1);
+				
+				if (parsedLines < lineCount) {
+					// Following line is joined with this one
+					joined = lineUpdated.toString();
+					joinedLines++;
+					continue;
+				}
+				
+				// Escaped line end at the end of file, there is nothing to join
+				lineText = lineUpdated.toString();
+				start = 0;
+				end = lineText.length();
 			}
-		
+			
 			if (lineUpdated.length() > 0 && lineUpdated.charAt(0) == '#') {
-				// Remove line for grammar parser
-				line = "";
+				processDirective(lineUpdated.toString(), lineIndex, source, include_filename, root);
 				
-				// Parse the line
-				String word = readUntil(lineUpdated, 1, ' ', false, false);
-				String values = readUntil(lineUpdated, 2 + word.length(), '\n', true, false);
-
-				LogUtil.benchLog(
-					options,
-					this,
-					source,
-					"Line: " + Integer.toString(parsedLines) + " = preProcToken"
-				);
-
-				switch(word.toLowerCase()) {
-					case "define":
-						String ident = readUntil(values, 0, new char[] { ' ', '\t' }, true, true);
-						
-						if (ident.length() > 0) {
-							ident = ident.trim();
-						}
-
-						if (ident.length() == 0) {
-							throw new SQFPreproccessException(source, lineIndex, "Empty macro definition");
-						}
-						
-						String value = null;
-						String arguments = null;
-						
-						// Only load value if there is any
-						if (values.length() > ident.length() + 1) {
-							value = values.substring(ident.length() + 1).trim();
-						}
-
-						// Parse argumented macro
-						if (ident.indexOf('(') >= 0) {
-							arguments = ident.substring(ident.indexOf('(') + 1);
-							if (arguments.indexOf(')') >= 0) {
-								arguments = arguments.substring(0, arguments.indexOf(')'));
-							}
-							ident = ident.substring(0, ident.indexOf('('));
-						}
-						
-						Token token = new Token(Linter.STRING_LITERAL);
-						token.beginLine = lineIndex + 1;
-						token.endLine = lineIndex + 1;
-						token.beginColumn = 1;
-						token.endColumn = values.length() + 1;
-						
-						if (!macros.containsKey(ident)) {
-							macros.put(ident, new SQFMacro(ident, arguments, source, lineIndex));
-							sortedMacros.add(macros.get(ident));
-						}
-						
-						macros.get(ident).addDefinition(
-							include_filename ? source : null,
-							token,
-							value
-						);
-						
-						break;
-					case "include":
-						values = readUntil(lineUpdated, 2 + word.length(), '\n', false, false);
-						String filename = values.trim();
-						if (filename.length() > 0) {
-							String originalPath = filename.substring(1, filename.length() - 1);
-							String actualPath = resolvePath(originalPath).replaceAll("\\\\", "/");							
-							Path path = root.resolve(actualPath);
-
-							getIncludes().add(
-								new SQFInclude(originalPath, actualPath, source)
-							);
-
-							if (Files.exists(path) && !Files.isDirectory(path)) {
-								String includeContent;
-								try {
-									includeContent = StreamUtil.streamToString(new FileInputStream(path.toString()));
-								} catch (FileNotFoundException e) {
-									throw new SQFPreproccessException(
-										source,
-										lineIndex,
-										"Include file not found"
-									);
-								}
-								process(
-									includeContent,
-									path.toString(),
-									true
-								);
-							} else if (options.isCheckPaths()) {
-								warnings.add(
-									new Warning(
-										include_filename ? source : null,
-										buildToken(
-											lineIndex + 1,
-											lineIndex + 1,
-											1 + "#include ".length(),
-											line.length() + 1
-										),
-										String.format(
-											"File %s doesn't seem to exists.",
-											path.toString()
-										)
-									)
-								);
-							}
-						}
-						
-						break;
-					case "ifdef": break;
-					case "ifndef": break;
-					case "undef": break;
-					case "else": break;
-				}
-
-				LogUtil.benchLog(
-					options,	
-					this,
-					source,
-					"Line: " + Integer.toString(parsedLines) + " = preProcToken done"
-				);
+				// Remove line for grammar parser
+				appendLine(output, lineIndex++, "", 0, 0);
+			} else if (!isActive()) {
+				// Skipped by condition, line is kept empty so line numbers don't change
+				appendLine(output, lineIndex++, "", 0, 0);
 			} else if (!inComment) {
-
-				LogUtil.benchLog(
-					options,
-					this,
-					source,
-					"Line: " + Integer.toString(parsedLines) + " = !inComment " + Integer.toString(line.length())
-				);
 				try {
-					sortedMacros.sort((a, b) -> b.getName().length() - a.getName().length());
-					
+					// Look for the first macro without copying the line
 					int replaceIndex = 0;
 					boolean replaceInString = false;
-					String stringLimiter = "\"";
-					while (replaceIndex < line.length()) {
-
-						LogUtil.benchLog(
-							options,
-							this,
-							source,
-							"Line: " + Integer.toString(parsedLines) + " index run"
-						);
-
+					char stringLimiter = '"';
+					int length = end - start;
+					SQFMacro macro = null;
+					while (replaceIndex < length) {
+						char current = lineText.charAt(start + replaceIndex);
+						
 						if (replaceInString) {
-							if (replaceIndex < line.length() - 2 && line.substring(replaceIndex, replaceIndex + 2).equals(stringLimiter + stringLimiter)) {
+							if (replaceIndex < length - 2 && current == stringLimiter && lineText.charAt(start + replaceIndex + 1) == stringLimiter) {
 								replaceIndex += 2;
-							} else if (line.substring(replaceIndex, replaceIndex + 1).equals(stringLimiter)) {
+							} else if (current == stringLimiter) {
 								replaceInString = false;
 							}
 							replaceIndex++;
-						} else if (line.substring(replaceIndex, replaceIndex + 1).equals("\"")) {
-							stringLimiter = "\"";
+						} else if (current == '"' || current == '\'') {
+							stringLimiter = current;
 							replaceIndex++;
 							replaceInString = true;
-						} else if (line.substring(replaceIndex, replaceIndex + 1).equals("'")) {
-							stringLimiter = "'";
-							replaceIndex++;
-							replaceInString = true;
-						} else if (replaceIndex < line.length() - 2 && line.substring(replaceIndex, replaceIndex + 2).equals("//")) {
+						} else if (replaceIndex < length - 2 && current == '/' && lineText.charAt(start + replaceIndex + 1) == '/') {
 							// Rest of the line is a comment, so skip it
 							break;
+						} else if ((macro = macroMatcher.matchAt(lineText, start, end, start + replaceIndex)) != null) {
+							break;
 						} else {
-							boolean replaced = true;
-
-							// Cap macro recursion depth to 10.
-							int depth = 0;
-							while (replaced && depth < 20) {
-								replaced = false;
-								for (SQFMacro macro : sortedMacros) {
-									if (macro.matchAt(line, replaceIndex)) {
-										
-										String before = line;
-										
-										line = line.substring(0, replaceIndex) +
-											replaceMacro(line.substring(replaceIndex), macro);
-										replaced = true;
-										depth++;
-
-										LogUtil.benchLog(
-											options,
-											this,
-											source,
-											"Line: " + Integer.toString(parsedLines)
-												+ " macro replaced: "
-												+ "before: " + before + "\n"
-												+ "after: " + line
-										);
-
-										if (before.equals(line)) {
-											
-											String macroList = "";
-											for (SQFMacro macro2 : sortedMacros) {
-												macroList += 
-													macro2.getName() + "( "
-														+ macro2.getSource() + ","
-														+ macro2.getLine()
-													+ ")\n";
-											}
-											LogUtil.benchLog(
-												options,
-												this,
-												source,
-												"Line: " + Integer.toString(parsedLines)
-													+ " macro replaced by same: "
-													+ macroList
-											);
-											
-											throw new SQFPreproccessException(
-												source,
-												lineIndex,
-												"Macro infinite loop detected by macro: "
-													+ macro.getName() + "( "
-													+ macro.getSource() + ","
-													+ macro.getLine()
-													+ ")"
-											);
-										}
-
-										break;
-									}
-								}
-							}
-
-							// We only increment the index if we didn't perform any macro replacement.
-							// If we DID then we need to check for strings etc.
-							if (depth == 0) {
-								replaceIndex++;
-							}
+							replaceIndex++;
 						}
 					}
-
-
-					// System.out.println("#" + lineIndex + "\t" + line);
 					
+					if (macro == null) {
+						appendLine(output, lineIndex++, lineText, start, end);
+					} else {
+						String line = replaceMacros(
+							lineText.substring(start, end),
+							replaceIndex,
+							String.valueOf(stringLimiter),
+							source,
+							lineIndex
+						);
+						appendLine(output, lineIndex++, line, 0, line.length());
+					}
 				} catch (SQFPreproccessException e) {
 					throw e;
 				} catch (Exception ex) {
 					Logger.getLogger(SQFLint.class.getName()).log(Level.SEVERE, "Failed to parse line " + lineIndex + " of " + source, ex);
-					LogUtil.benchLog(
-						options,
-						this,
-						source,
-						"Failed to parse line: " + Integer.toString(parsedLines) + " = !inComment"
-					);
 					throw new SQFPreproccessException(source, parsedLines, ex.getMessage());
 				}
-				
-				// System.out.println("#" + lineIndex + "\t" + line);
+			} else {
+				appendLine(output, lineIndex++, lineText, start, end);
 			}
-
-			LogUtil.benchLog(
-				options,
-				this,
-				source,
-				"Done line: " + Integer.toString(parsedLines)
+		}
+		
+		for (; joinedLines > 0; joinedLines--) {
+			appendLine(output, lineIndex++, "", 0, 0);
+		}
+		
+		// Blocks that were never closed
+		while (!conditions.isEmpty()) {
+			Condition condition = conditions.pop();
+			warnings.add(
+				new Warning(
+					include_filename ? source : null,
+					buildToken(condition.line + 1, condition.line + 1, 1, 1),
+					"Missing #endif."
+				)
 			);
+		}
+
+		return output.toString();
+	}
+	
+	/**
+	 * Joins lines ending with backslash. Joined line is followed by empty
+	 * lines, so the line count doesn't change.
+	 * 
+	 * Text after the position that was already checked is kept as a pending
+	 * part (result of the last join) followed by the rest of the input,
+	 * so the input isn't copied again for every escaped line.
+	 */
+	private static String joinEscapedLines(String input) {
+		if (input.indexOf("\\\n") < 0) {
+			return input;
+		}
+		
+		StringBuilder result = new StringBuilder(input.length());
+		EscapedText text = new EscapedText(input);
+		
+		while (text.length() > 2) {
+			if (text.pendingLength() == 0) {
+				// Nothing pending, skip straight to the next escaped line end
+				int next = input.indexOf("\\\n", text.position);
+				if (next < 0 || input.length() - next <= 2) {
+					break;
+				}
+				result.append(input, text.position, next);
+				text.position = next;
+			} else if (text.charAt(0) != '\\' || text.charAt(1) != '\n') {
+				result.append(text.charAt(0));
+				text.skip();
+				continue;
+			}
+			
+			// Find the end of the line, counting escaped line ends
+			int length = text.length();
+			int lines = 0;
+			int end = 0;
+			while (end < length) {
+				if (end < length - 1 && text.charAt(end) == '\\' && text.charAt(end + 1) == '\n') {
+					lines++;
+					end += 2;
+				}
+				if (end >= length || text.charAt(end) == '\n') {
+					break;
+				}
+				end++;
+			}
+			
+			// Line without escaped line ends, followed by empty lines
+			StringBuilder joined = new StringBuilder(end + lines);
+			int index = 2;
+			while (index < end) {
+				if (index + 1 < end && text.charAt(index) == '\\' && text.charAt(index + 1) == '\n') {
+					index += 2;
+				} else {
+					joined.append(text.charAt(index++));
+				}
+			}
+			for (int i = 0; i < lines; i++) {
+				joined.append('\n');
+			}
 			
-			lines[lineIndex++] = line;
+			text.replace(end, joined);
+			
+			result.append(text.charAt(0));
+			text.skip();
+		}
+		
+		text.appendTo(result);
+		
+		return result.toString();
+	}
+	
+	/**
+	 * Text that wasn't checked for escaped line ends yet.
+	 */
+	private static class EscapedText {
+		private final String input;
+		private int position = 0;
+		private String pending = "";
+		private int pendingStart = 0;
+		
+		EscapedText(String input) {
+			this.input = input;
 		}
 		
-		LogUtil.benchLog(options, this, source, "Preproc done");
+		int pendingLength() {
+			return pending.length() - pendingStart;
+		}
+		
+		int length() {
+			return pendingLength() + input.length() - position;
+		}
 		
-		List<String> finalLines = new ArrayList<String>();
-		int extraLinesAfter = 0;
-		for (String line : lines) {
-			if (line.equals("***?***")) {
-				extraLinesAfter++;
+		char charAt(int index) {
+			int pendingLength = pendingLength();
+			if (index < pendingLength) {
+				return pending.charAt(pendingStart + index);
+			}
+			return input.charAt(position + index - pendingLength);
+		}
+		
+		void skip() {
+			if (pendingLength() > 0) {
+				pendingStart++;
 			} else {
-				finalLines.add(line);
-				if (extraLinesAfter > 0) {
-					for (int i = 0; i < extraLinesAfter; i++) {
-						finalLines.add("");
+				position++;
+			}
+		}
+		
+		/**
+		 * Replaces first characters of the text.
+		 */
+		void replace(int end, StringBuilder replacement) {
+			int pendingLength = pendingLength();
+			if (end < pendingLength) {
+				replacement.append(pending, pendingStart + end, pending.length());
+			} else {
+				position += end - pendingLength;
+			}
+			pending = replacement.toString();
+			pendingStart = 0;
+		}
+		
+		void appendTo(StringBuilder result) {
+			result.append(pending, pendingStart, pending.length());
+			result.append(input, position, input.length());
+		}
+	}
+	
+	private void appendLine(StringBuilder output, int index, CharSequence line, int start, int end) {
+		if (index > 0) {
+			output.append('\n');
+		}
+		output.append(line, start, end);
+	}
+	
+	private static int indexOfCommentEnd(String text, int start, int end) {
+		for (int index = start; index + 1 < end; index++) {
+			if (text.charAt(index) == '*' && text.charAt(index + 1) == '/') {
+				return index;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Writes line without whitespaces at the beginning, with whitespaces
+	 * collapsed to single space and without comments.
+	 * Unterminated multiline comment removes the rest of the line.
+	 * 
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @param result
+	 * @return if there is unterminated multiline comment
+	 */
+	private static boolean stripLine(String text, int start, int end, StringBuilder result) {
+		int index = start;
+		while (index < end && isWhitespace(text.charAt(index))) {
+			index++;
+		}
+		
+		while (index < end) {
+			char current = text.charAt(index);
+			
+			if (isWhitespace(current)) {
+				result.append(' ');
+				while (index < end && isWhitespace(text.charAt(index))) {
+					index++;
+				}
+			} else if (current == '/' && index + 1 < end && text.charAt(index + 1) == '/') {
+				// Comment until the end of line
+				index += 2;
+				while (index < end && !isLineTerminator(text.charAt(index))) {
+					index++;
+				}
+			} else if (current == '/' && index + 1 < end && text.charAt(index + 1) == '*') {
+				int commentEnd = index + 2;
+				while (commentEnd < end && !isLineTerminator(text.charAt(commentEnd))) {
+					if (text.charAt(commentEnd) == '*' && commentEnd + 1 < end && text.charAt(commentEnd + 1) == '/') {
+						break;
 					}
-					extraLinesAfter = 0;
+					commentEnd++;
+				}
+				
+				if (commentEnd + 1 >= end || text.charAt(commentEnd) != '*') {
+					return true;
 				}
+				
+				index = commentEnd + 2;
+			} else {
+				result.append(current);
+				index++;
 			}
 		}
+		
+		return false;
+	}
+	
+	/**
+	 * Whitespace as matched by \\s
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+	
+	/**
+	 * Characters that aren't matched by . in regular expressions
+	 */
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+	
+	private void processDirective(
+		String lineUpdated,
+		int lineIndex,
+		String source,
+		boolean include_filename,
+		Path root
+	)
+		throws SQFPreproccessException
+	{
+		// Parse the line
+		String word = readUntil(lineUpdated, 1, ' ', false, false);
+		String values = readUntil(lineUpdated, 2 + word.length(), '\n', true, false);
+		
+		// Conditions are tracked even in skipped blocks, because of nesting
+		switch(word.toLowerCase()) {
+			case "ifdef":
+			case "ifndef":
+				boolean parentActive = isActive();
+				boolean value = false;
+				
+				// Macros aren't checked in skipped blocks, it doesn't matter there
+				if (parentActive) {
+					String name = readUntil(values, 0, new char[] { ' ', '\t' }, false, false).trim();
+					if (name.length() == 0) {
+						throw new SQFPreproccessException(source, lineIndex, "Empty macro name");
+					}
+					value = isDefined(name) == word.equalsIgnoreCase("ifdef");
+				}
+				
+				conditions.push(new Condition(lineIndex, parentActive, value));
+				return;
+			case "else":
+				if (conditions.isEmpty() || conditions.peek().hasElse) {
+					warnings.add(
+						new Warning(
+							include_filename ? source : null,
+							buildToken(lineIndex + 1, lineIndex + 1, 1, 1 + word.length()),
+							conditions.isEmpty() ? "#else without #ifdef." : "Duplicate #else."
+						)
+					);
+				} else {
+					conditions.peek().hasElse = true;
+					conditions.peek().value = !conditions.peek().value;
+				}
+				return;
+			case "endif":
+				if (conditions.isEmpty()) {
+					warnings.add(
+						new Warning(
+							include_filename ? source : null,
+							buildToken(lineIndex + 1, lineIndex + 1, 1, 1 + word.length()),
+							"#endif without #ifdef."
+						)
+					);
+				} else {
+					conditions.pop();
+				}
+				return;
+		}
+		
+		// Other directives have no effect in skipped blocks
+		if (!isActive()) {
+			return;
+		}
+
+		switch(word.toLowerCase()) {
+			case "define":
+				String ident = readUntil(values, 0, new char[] { ' ', '\t' }, true, true);
+				
+				if (ident.length() > 0) {
+					ident = ident.trim();
+				}
+
+				if (ident.length() == 0) {
+					throw new SQFPreproccessException(source, lineIndex, "Empty macro definition");
+				}
+				
+				String value = null;
+				String arguments = null;
+				
+				// Only load value if there is any
+				if (values.length() > ident.length() + 1) {
+					value = values.substring(ident.length() + 1).trim();
+				}
 
-		return String.join("\n", lines);
+				// Parse argumented macro
+				if (ident.indexOf('(') >= 0) {
+					arguments = ident.substring(ident.indexOf('(') + 1);
+					if (arguments.indexOf(')') >= 0) {
+						arguments = arguments.substring(0, arguments.indexOf(')'));
+					}
+					ident = ident.substring(0, ident.indexOf('('));
+				}
+				
+				Token token = new Token(Linter.STRING_LITERAL);
+				token.beginLine = lineIndex + 1;
+				token.endLine = lineIndex + 1;
+				token.beginColumn = 1;
+				token.endColumn = values.length() + 1;
+				
+				addDefinition(
+					ident,
+					arguments,
+					source,
+					lineIndex,
+					new SQFMacroDefinition(
+						include_filename ? source : null,
+						token,
+						value,
+						arguments
+					)
+				);
+				
+				break;
+			case "include":
+				values = readUntil(lineUpdated, 2 + word.length(), '\n', false, false);
+				String filename = values.trim();
+				if (filename.length() > 0) {
+					String originalPath = filename.substring(1, filename.length() - 1);
+					String actualPath = resolvePath(originalPath).replaceAll("\\\\", "/");							
+					Path path = root.resolve(actualPath);
+
+					getIncludes().add(
+						new SQFInclude(originalPath, actualPath, source)
+					);
+
+					boolean exists = Files.exists(path) && !Files.isDirectory(path);
+					if (exists) {
+						SQFIncludeCache.Entry included = includeCache.get(path, options, this::isDefined);
+						
+						if (included == null) {
+							String includeContent;
+							try {
+								includeContent = StreamUtil.fileToString(path.toString());
+							} catch (FileNotFoundException e) {
+								throw new SQFPreproccessException(
+									source,
+									lineIndex,
+									"Include file not found"
+								);
+							}
+							
+							included = processInclude(path, includeContent);
+						}
+						
+						applyInclude(included);
+					} else if (options.isCheckPaths()) {
+						warnings.add(
+							new Warning(
+								include_filename ? source : null,
+								buildToken(
+									lineIndex + 1,
+									lineIndex + 1,
+									1 + "#include ".length(),
+									// Line is already removed for the parser
+									1
+								),
+								String.format(
+									"File %s doesn't seem to exists.",
+									path.toString()
+								)
+							)
+						);
+					}
+					
+					// Missing file can appear later, which would make cached results invalid
+					if (!exists) {
+						includedFiles.add(SQFIncludeCache.FileStamp.missing(path));
+					}
+				}
+				
+				break;
+			case "undef":
+				String name = readUntil(values, 0, new char[] { ' ', '\t' }, false, false).trim();
+				if (name.length() > 0) {
+					removeDefinition(name, source, lineIndex);
+				}
+				break;
+		}
+	}
+	
+	/**
+	 * @return if lines outside of conditions or in the active branch
+	 */
+	private boolean isActive() {
+		return conditions.isEmpty() || conditions.peek().isActive();
+	}
+	
+	/**
+	 * Checks if macro is currently defined.
+	 * Macros that weren't touched by this file are looked up in the
+	 * including file and remembered, as the result depends on them.
+	 * 
+	 * @param name
+	 * @return 
+	 */
+	private boolean isDefined(String name) {
+		if (outer == null || macros.containsKey(name) || undefined.contains(name)) {
+			return macroMatcher.contains(name);
+		}
+		
+		return outerConditions.computeIfAbsent(name, outer::test);
+	}
+	
+	/**
+	 * Replaces macros in line, starting at specified index.
+	 */
+	private String replaceMacros(
+		String line,
+		int replaceIndex,
+		String stringLimiter,
+		String source,
+		int lineIndex
+	)
+		throws SQFPreproccessException
+	{
+		boolean replaceInString = false;
+		while (replaceIndex < line.length()) {
+			if (replaceInString) {
+				if (replaceIndex < line.length() - 2 && line.substring(replaceIndex, replaceIndex + 2).equals(stringLimiter + stringLimiter)) {
+					replaceIndex += 2;
+				} else if (line.substring(replaceIndex, replaceIndex + 1).equals(stringLimiter)) {
+					replaceInString = false;
+				}
+				replaceIndex++;
+			} else if (line.substring(replaceIndex, replaceIndex + 1).equals("\"")) {
+				stringLimiter = "\"";
+				replaceIndex++;
+				replaceInString = true;
+			} else if (line.substring(replaceIndex, replaceIndex + 1).equals("'")) {
+				stringLimiter = "'";
+				replaceIndex++;
+				replaceInString = true;
+			} else if (replaceIndex < line.length() - 2 && line.substring(replaceIndex, replaceIndex + 2).equals("//")) {
+				// Rest of the line is a comment, so skip it
+				break;
+			} else {
+				boolean replaced = true;
+
+				// Cap macro recursion depth to 10.
+				int depth = 0;
+				while (replaced && depth < 20) {
+					replaced = false;
+					SQFMacro macro = macroMatcher.matchAt(line, replaceIndex);
+					if (macro != null) {
+						
+						String before = line;
+						
+						line = line.substring(0, replaceIndex) +
+							replaceMacro(line.substring(replaceIndex), macro);
+						replaced = true;
+						depth++;
+
+						if (before.equals(line)) {
+							throw new SQFPreproccessException(
+								source,
+								lineIndex,
+								"Macro infinite loop detected by macro: "
+									+ macro.getName() + "( "
+									+ macro.getSource() + ","
+									+ macro.getLine()
+									+ ")"
+							);
+						}
+					}
+				}
+
+				// We only increment the index if we didn't perform any macro replacement.
+				// If we DID then we need to check for strings etc.
+				if (depth == 0) {
+					replaceIndex++;
+				}
+			}
+		}
+		
+		return line;
+	}
+	
+	/**
+	 * Preprocesses included file on its own and stores the result in cache.
+	 * Macros defined in the file only depend on the including file through
+	 * conditions, so the result can be reused by every file that includes
+	 * it with the same conditions.
+	 * 
+	 * @param path resolved path of included file
+	 * @param contents contents of included file
+	 * @return preprocessing result
+	 * @throws SQFPreproccessException 
+	 */
+	private SQFIncludeCache.Entry processInclude(Path path, String contents)
+		throws SQFPreproccessException
+	{
+		SQFPreprocessor included = new SQFPreprocessor(options, includeCache);
+		included.outer = this::isDefined;
+		included.includedFiles.add(SQFIncludeCache.FileStamp.of(path, contents));
+		included.process(contents, path.toString(), true);
+		
+		templateHits += included.templateHits;
+		templateMisses += included.templateMisses;
+		
+		SQFIncludeCache.Entry entry = new SQFIncludeCache.Entry(
+			included.defines,
+			included.includes,
+			included.warnings,
+			included.includedFiles,
+			included.outerConditions
+		);
+		includeCache.put(path, options, entry);
+		
+		return entry;
+	}
+	
+	/**
+	 * Adds macros, includes and warnings produced by included file.
+	 * 
+	 * @param included 
+	 */
+	private void applyInclude(SQFIncludeCache.Entry included) {
+		for (SQFIncludeCache.Define define : included.getDefines()) {
+			if (define.undefine) {
+				removeDefinition(define.name, define.source, define.line);
+			} else {
+				addDefinition(
+					define.name,
+					define.arguments,
+					define.source,
+					define.line,
+					define.definition
+				);
+			}
+		}
+		
+		includes.addAll(included.getIncludes());
+		warnings.addAll(included.getWarnings());
+		includedFiles.addAll(included.getFiles());
+	}
+	
+	private void addDefinition(
+		String ident,
+		String arguments,
+		String source,
+		int line,
+		SQFMacroDefinition definition
+	) {
+		SQFMacro macro = macros.get(ident);
+		if (macro == null) {
+			macro = new SQFMacro(ident, arguments, source, line);
+			macros.put(ident, macro);
+		} else if (!macroMatcher.contains(ident)) {
+			// Macro was undefined, so it doesn't keep its old arguments
+			macro.setArguments(arguments);
+		}
+		
+		macro.addDefinition(definition);
+		macroMatcher.add(macro);
+		
+		defines.add(new SQFIncludeCache.Define(ident, arguments, source, line, definition));
+	}
+	
+	/**
+	 * Stops replacing of specified macro. Its definitions are kept,
+	 * so they're still available in output.
+	 */
+	private void removeDefinition(String ident, String source, int line) {
+		macroMatcher.remove(ident);
+		undefined.add(ident);
+		defines.add(SQFIncludeCache.Define.undefine(ident, source, line));
 	}
 	
 	private Token buildToken(int lineStart, int lineEnd, int columnStart, int columnEnd) {
@@ -570,25 +962,20 @@ public class SQFPreprocessor {
 	
 	private String replaceMacro(String line, SQFMacro macro) {
 		int index = line.indexOf(macro.getName());
-		String value = null;
-		
-		if (!macro.getDefinitions().isEmpty()) {
-			value = macro.getDefinitions().get(macro.getDefinitions().size() - 1).getValue();
-		}
-		
-		if (value == null) {
-			value = "";
-		}
+		List<SQFMacroDefinition> definitions = macro.getDefinitions();
 		
 		if (macro.getArguments() == null) {
-			/*
-			System.out.println("At line: '" + line + "'");
-			System.out.println("MACRO: " + macro.getName());
-			System.out.println("VALUE: " + value);
-			*/
+			String value = null;
+			if (!definitions.isEmpty()) {
+				value = definitions.get(definitions.size() - 1).getValue();
+			}
+			
+			if (value == null) {
+				value = "";
+			}
+			
 			line = line.substring(0, index) + value + line.substring(index + macro.getName().length());
 		} else {
-			String[] arguments = macro.getArguments().split(",");
 			int startArgs = line.indexOf('(', index + macro.getName().length());
 			if(startArgs == -1 || !line.substring(index + macro.getName().length(), startArgs).trim().isEmpty())
 			{
@@ -599,61 +986,33 @@ public class SQFPreprocessor {
 				return line.substring(index + macro.getName().length());
 			}
 			String values = line.substring(startArgs + 1);
+			
+			SQFMacroDefinition definition = definitions.isEmpty() ? null : definitions.get(definitions.size() - 1);
+			SQFMacroTemplate template = definition != null ? definition.getTemplate() : null;
+			if (template != null && template.getArguments().equals(macro.getArguments())) {
+				templateHits++;
+			} else {
+				// Macro was first defined with different arguments, those are used
+				templateMisses++;
+				template = SQFMacroTemplate.compile(
+					definition != null ? definition.getValue() : null,
+					macro.getArguments()
+				);
+			}
 
 			ArrayList<String> args = new ArrayList<String>();
 			int argsClose = parseParams(values, args);
-			if(args.size() != arguments.length) {
+			if(args.size() != template.getArgumentCount()) {
 				return line.substring(index + macro.getName().length());
 			}
 
 			// Index of next char after closing paren of argument list
 			int pastEndOfMacro = startArgs + 1 + argsClose + 1;
 			
-			// This is completely wrong, but #YOLO
-			// (I actually don't want to spend much time on this, because #YOLO)
-			// This works somewhat, so deal with it
-			for (int i = 0; i < arguments.length && i < args.size(); i++) {
-				String argName = arguments[i].trim();
-				String argValue = args.get(i).trim();
-				String noletter = "([^a-zA-Z_#])";
-				
-				// @TODO: There has to be other way :O
-				value = value.replaceAll("##" + argName + "##", argValue);
-				
-				value = value.replaceAll("^" + argName + "##", argValue);
-				value = value.replaceAll(noletter + argName + "##", "$1" + argValue);
-				
-				value = value.replaceAll("##" + argName + "$", argValue);
-				value = value.replaceAll("##" + argName + noletter, argValue + "$1");
-				
-				value = value.replaceAll("#" + argName + "$", '"' + argValue + '"');
-				value = value.replaceAll("#" + argName + noletter, '"' + argValue + "\"$1");
-				
-				value = value.replaceAll("^" + argName + "$", argValue);
-				value = value.replaceAll("^" + argName + noletter, argValue + "$1");
-				value = value.replaceAll(noletter + argName + "$", "$1" + argValue);
-				value = value.replaceAll(noletter + argName + noletter, "$1" + argValue + "$2");
-			}
-			
-			value = value.replaceAll("##", "");
-
-			/*
-			System.out.println("At line: '" + line + "'");
-			System.out.println("MACRO: '" + macro.getName() + "'");
-			System.out.println("ARGS: '" + macro.getArguments() + "'");
-			System.out.println("VALS: '" + values + "'");
-			System.out.println("REPLACE: " + value);
-			*/
-			
 			String left = line.substring(0, index);
 			String right = line.substring(pastEndOfMacro);
 			
-			/*
-			System.out.println("LEFT: " + left);
-			System.out.println("RIGHT: " + right);
-			*/
-			
-			line = left + value + right;
+			line = left + template.expand(args) + right;
 		}
 		
 		return line;
@@ -721,4 +1080,52 @@ public class SQFPreprocessor {
 	public List<Warning> getWarnings() {
 		return warnings;
 	}
+
+	/**
+	 * @return number of macro expansions that used template compiled with the definition
+	 */
+	public long getTemplateHits() {
+		return templateHits;
+	}
+
+	/**
+	 * @return number of macro expansions that had to compile template
+	 */
+	public long getTemplateMisses() {
+		return templateMisses;
+	}
+
+	/**
+	 * Lists every file included by this file, directly or through other
+	 * includes. Includes of files that don't exist are listed too.
+	 * 
+	 * @return content hash of every included file, null if the file is missing
+	 */
+	public Map<Path, String> getIncludedFiles() {
+		Map<Path, String> result = new LinkedHashMap<>();
+		for (SQFIncludeCache.FileStamp file : includedFiles) {
+			result.put(file.getPath(), file.getHash());
+		}
+		return result;
+	}
+
+	/**
+	 * Block started by #ifdef or #ifndef.
+	 */
+	private static class Condition {
+		private final int line;
+		private final boolean parentActive;
+		private boolean value;
+		private boolean hasElse = false;
+		
+		Condition(int line, boolean parentActive, boolean value) {
+			this.line = line;
+			this.parentActive = parentActive;
+			this.value = value;
+		}
+		
+		boolean isActive() {
+			return parentActive && value;
+		}
+	}
 }
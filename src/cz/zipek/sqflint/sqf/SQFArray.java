@@ -58,18 +58,16 @@ public class SQFArray extends SQFUnit {
 		}
 	}
 	
-	@Override
-	public void revalidate() {
-		for (SQFUnit unit : units) {
-			if (unit != null && unit instanceof SQFExpression) {
-				SQFExpression exp = (SQFExpression)unit;
-				exp.finish(true);
-			}
-		}
-	}
-
 	@Override
 	public String toString() {
 		return "Array";
 	}		
+
+	@Override
+	public void finishDeferred() {
+		for (SQFExpression unit : units) {
+			if (unit != null)
+				unit.finishDeferred();
+		}
+	}
 }
@@ -60,13 +60,6 @@ public class SQFBlock extends SQFUnit {
 		return "Code block";
 	}
 
-	@Override
-	public void revalidate() {
-		for (SQFUnit unit : getStatements()) {
-			unit.revalidate();
-		}
-	}
-
 	/**
 	 * @return the innerContext
 	 */
@@ -80,4 +73,12 @@ public class SQFBlock extends SQFUnit {
 	public void setInnerContext(SQFContext innerContext) {
 		this.innerContext = innerContext;
 	}
+
+	@Override
+	public void finishDeferred() {
+		for (SQFUnit unit : getStatements()) {
+			if (unit != null)
+				unit.finishDeferred();
+		}
+	}
 }
@@ -39,7 +39,7 @@ import java.util.Map;
 public class SQFContext {
 	private final Linter linter;
 	private final SQFContext previous;
-	private boolean newThread;
+	private final boolean newThread;
 	private final List<SQFContext> children = new ArrayList<>();
 	
 	private final Map<String, SQFVariable> variables = new HashMap<>();
@@ -58,37 +58,63 @@ public class SQFContext {
 	}
 	
 	/**
-	 * Loads variable assigned to specified ident.
+	 * Loads variable assigned to specified symbol.
 	 * If variable isn't registered yet, it will be.
 	 * 
-	 * @param ident
+	 * @param symbol id of lowercased name in linter symbol table
 	 * @param name
 	 * @param privateAssigment
 	 * @return
 	 */
-	public SQFVariable getVariable(String ident, String name, boolean privateAssigment) {
-		SQFVariable var;
+	public SQFVariable getVariable(int symbol, String name, boolean privateAssigment) {
+		SQFScopeIndex scopes = linter.getScopes();
+		
+		// Current context is resolved using the index
+		if (scopes.isCurrent(this)) {
+			SQFVariable var = scopes.find(symbol, privateAssigment);
+			if (var == null) {
+				var = scopes.getDefiningContext(privateAssigment).define(symbol, name);
+			}
+			return var;
+		}
+		
+		SQFVariable var = variables.get(linter.getSymbols().getName(symbol));
 
-		if (!variables.containsKey(ident)) {
+		if (var == null) {
 			if (!privateAssigment &&
 					previous != null &&
 					(!newThread || !linter.getOptions().isContextSeparationEnabled())
 			) {
-				return previous.getVariable(ident, name, false);
+				return previous.getVariable(symbol, name, false);
 			} else {
-				var = new SQFVariable(name);
-				variables.put(ident, var);
+				var = define(symbol, name);
 			}
-		} else {
-			var = variables.get(ident);
 		}
 		
 		return var;
 	}
 	
+	private SQFVariable define(int symbol, String name) {
+		SQFVariable var = new SQFVariable(name);
+		variables.put(linter.getSymbols().getName(symbol), var);
+		linter.getScopes().bind(this, symbol, var);
+		return var;
+	}
+	
+	/**
+	 * Adds variable restored from previous linter.
+	 * 
+	 * @param ident lowercased name
+	 * @param var
+	 */
+	public void restoreVariable(String ident, SQFVariable var) {
+		variables.put(ident, var);
+		linter.getScopes().bind(this, linter.getSymbols().intern(ident), var);
+	}
+	
 	public SQFParseException handleName(Token name, boolean isAssigment, boolean isPrivate) {
 		SQFVariable var = getVariable(
-			name.toString().toLowerCase(),
+			linter.getSymbols().of(name),
 			name.toString(),
 			isAssigment && isPrivate
 		);
@@ -135,16 +161,4 @@ public class SQFContext {
 	public boolean isNewThread() {
 		return newThread;
 	}
-
-	/**
-	 * @param newThread the newThread to set
-	 */
-	public void setNewThread(boolean newThread) {
-		this.newThread = newThread;
-	}
-	
-	public void clear() {
-		variables.clear();
-		children.forEach(c -> c.clear());
-	}
 }
@@ -25,21 +25,18 @@ package cz.zipek.sqflint.sqf;
 
 import cz.zipek.sqflint.linter.Linter;
 import cz.zipek.sqflint.linter.SQFParseException;
-import cz.zipek.sqflint.linter.Warning;
+import cz.zipek.sqflint.linter.SymbolTable;
+import cz.zipek.sqflint.output.PhaseTrace;
 import cz.zipek.sqflint.parser.Token;
+import cz.zipek.sqflint.sqf.operators.Operator;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  *
  * @author kamen
  */
 public class SQFExpression extends SQFUnit {
-	static int idCounter = 0;
-	static Map<String, SQFExpression> called = new HashMap<>();
-	
 	private final Token token;
 	private final int id;
 	
@@ -49,11 +46,9 @@ public class SQFExpression extends SQFUnit {
 	
 	private final List<String> signOperators = Arrays.asList("+", "-", "!", "not ");
 	
-	private SQFParseException sentError;
-	
 	public SQFExpression(Linter linter, Token token) {
 		super(linter);
-		id = idCounter++;
+		id = linter.nextExpressionId();
 		this.token = token;
 	}
 	
@@ -73,51 +68,68 @@ public class SQFExpression extends SQFUnit {
 	}
 
 	public SQFExpression finish() {
-		return finish(false);
+		// Loop body is analyzed by its operator, after the operand
+		if (linter.isAnalysisDeferred()) {
+			return this;
+		}
+		
+		// Expressions are analyzed while parsing, so it's measured separately
+		PhaseTrace trace = linter.getTrace();
+		trace.enter(PhaseTrace.Phase.ANALYZE);
+		try {
+			analyzeExpression();
+		} finally {
+			trace.exit();
+		}
+		
+		return this;
 	}
 	
-	public SQFExpression finish(boolean revalidate) {
-		if (revalidate) {
-			if (getRight() != null) {
-				getRight().revalidate();
-			}
-			
-			main.revalidate();
-			
-			if (isBlock()) {
-				getBlock().revalidate();
-			}
+	/**
+	 * Analyzes expression in the same order as finish would while parsing.
+	 */
+	@Override
+	public void finishDeferred() {
+		if (main != null && !(isBlock() && linter.isDeferred(getBlock()))) {
+			main.finishDeferred();
 		}
 		
-		// Remove previous error if there is any
-		if (sentError != null) {
-			if (sentError instanceof Warning) {
-				linter.getWarnings().remove((Warning)sentError);
-			} else {
-				linter.getErrors().remove(sentError);
-			}
+		if (right != null) {
+			right.finishDeferred();
 		}
 		
+		analyzeExpression();
+	}
+	
+	/**
+	 * Analyzes expression once it's parsed. Every expression is analyzed
+	 * exactly once, variables defined by enclosing statements (loop
+	 * variables) are already known at this point. Expressions of forEach
+	 * and count bodies are analyzed after the operand.
+	 */
+	private void analyzeExpression() {
 		// If main part of expression is identifier, try to run command
 		if (main != null && main instanceof SQFIdentifier) {
 			// Load main part of this expression
 			SQFIdentifier mainIdent = (SQFIdentifier)main;
-			String ident = mainIdent.getToken().image.toLowerCase();
+			SymbolTable symbols = linter.getSymbols();
+			int symbol = symbols.of(mainIdent.getToken());
+			Operator operator = symbols.getOperator(symbol);
 			
-			if (linter.getOptions().getOperators().containsKey(ident)) {
-				linter.getOptions().getOperators().get(ident).analyze(
+			if (operator != null) {
+				operator.analyze(
 					linter,
 					context,
 					this
 				);
 			} else if (
-				!linter.getPreprocessor().getMacros().containsKey(ident)
-				&& !linter.getOptions().isVariableSkipped(ident)
+				!symbols.isMacro(symbol)
+				&& !symbols.isSkipped(symbol)
 			) {
 				boolean isPrivate = left != null && left.isPrivate();
 				boolean isAssigment = right != null && right.isAssignOperator();
 				
-				sentError = context.handleName(
+				context.handleName(
 					mainIdent.getToken(),
 					isAssigment,
 					isPrivate
@@ -133,8 +145,6 @@ public class SQFExpression extends SQFUnit {
 				));
 			}
 		}
-		
-		return this;
 	}
 
 	/**
@@ -181,13 +191,17 @@ public class SQFExpression extends SQFUnit {
 		if (main != null && main instanceof SQFIdentifier) {
 			// Load main part of this expression
 			SQFIdentifier mainToken = (SQFIdentifier)main;
-			return mainToken.getToken().image.toLowerCase();
+			return linter.getSymbols().getName(linter.getSymbols().of(mainToken.getToken()));
 		}
 		return null;
 	}
 	
 	public boolean isCommand() {
-		return (getIdentifier() != null && linter.getOptions().getOperators().containsKey(getIdentifier()));
+		if (main != null && main instanceof SQFIdentifier) {
+			SQFIdentifier mainToken = (SQFIdentifier)main;
+			return linter.getSymbols().getOperator(linter.getSymbols().of(mainToken.getToken())) != null;
+		}
+		return false;
 	}
 	
 	public boolean isBlock() {
@@ -238,9 +252,4 @@ public class SQFExpression extends SQFUnit {
 	public String toString() {
 		return "Expression(" + main + ", #" + id + ")";
 	}
-	
-	@Override
-	public void revalidate() {
-		this.finish(true);
-	}
 }
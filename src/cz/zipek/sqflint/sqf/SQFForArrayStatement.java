@@ -72,11 +72,10 @@ public class SQFForArrayStatement extends SQFForStatement {
 	}
 
 	@Override
-	public void revalidate() {
-		super.revalidate();
-		
-		if (init != null) init.revalidate();
-		if (condition != null) condition.revalidate();
-		if (step != null) step.revalidate();
+	public void finishDeferred() {
+		if (init != null) init.finishDeferred();
+		if (condition != null) condition.finishDeferred();
+		if (step != null) step.finishDeferred();
+		if (block != null) block.finishDeferred();
 	}
 }
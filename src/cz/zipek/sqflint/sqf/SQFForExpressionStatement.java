@@ -46,8 +46,6 @@ public final class SQFForExpressionStatement extends SQFForStatement {
 		this.to = to;
 		this.step = step;
 		this.block = block;
-		
-		this.revalidate();
 	}
 
 	/**
@@ -86,32 +84,40 @@ public final class SQFForExpressionStatement extends SQFForStatement {
 	}
 
 	@Override
-	public void revalidate() {
-		if (variable != null
-				&& variable.getMain() != null
-				&& variable.getMain() instanceof SQFString) {
-			SQFString lit = (SQFString)variable.getMain();
-			String ident = lit.getStringContents()
-					.toLowerCase();
-
-			if (block.getInnerContext() != null) {
-				block.getInnerContext().clear();
-				SQFVariable var = block
-						.getInnerContext()
-						.getVariable(ident, lit.getStringContents(), true);
-
-				Token unquoted = new Token(SQFParser.IDENTIFIER, lit.getStringContents());
-				unquoted.beginLine = lit.getContents().beginLine;
-				unquoted.endLine = lit.getContents().endLine;
-				unquoted.beginColumn = lit.getContents().beginColumn + 1;
-				unquoted.endColumn = lit.getContents().endColumn - 1;
+	public void finishDeferred() {
+		if (variable != null) variable.finishDeferred();
+		if (from != null) from.finishDeferred();
+		if (to != null) to.finishDeferred();
+		if (step != null) step.finishDeferred();
+		
+		super.finishDeferred();
+	}
 
-				var.usage.add(unquoted);
-				var.definitions.add(unquoted);
-				var.comments.add(null);
-			}
+	/**
+	 * Defines loop variable in context of the loop body. Has to be called
+	 * before the body is parsed, as its expressions are analyzed right away.
+	 * 
+	 * @param linter
+	 * @param context inner context of loop body
+	 * @param variable expression with variable name
+	 */
+	public static void bindVariable(Linter linter, SQFContext context, SQFExpression variable) {
+		if (variable.getMain() == null || !(variable.getMain() instanceof SQFString)) {
+			return;
 		}
 		
-		super.revalidate();
+		SQFString lit = (SQFString)variable.getMain();
+		int symbol = linter.getSymbols().intern(lit.getStringContents());
+		SQFVariable var = context.getVariable(symbol, lit.getStringContents(), true);
+
+		Token unquoted = new Token(SQFParser.IDENTIFIER, lit.getStringContents());
+		unquoted.beginLine = lit.getContents().beginLine;
+		unquoted.endLine = lit.getContents().endLine;
+		unquoted.beginColumn = lit.getContents().beginColumn + 1;
+		unquoted.endColumn = lit.getContents().endColumn - 1;
+
+		var.usage.add(unquoted);
+		var.definitions.add(unquoted);
+		var.comments.add(null);
 	}
 }
@@ -45,7 +45,7 @@ public class SQFForStatement extends SQFUnit {
 	}
 
 	@Override
-	public void revalidate() {
-		this.block.revalidate();
+	public void finishDeferred() {
+		if (block != null) block.finishDeferred();
 	}
 }
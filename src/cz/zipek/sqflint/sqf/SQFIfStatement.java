@@ -48,10 +48,4 @@ public class SQFIfStatement extends SQFUnit {
 		if (trueBlock != null) trueBlock.analyze(source, context);
 		if (falseBlock != null) falseBlock.analyze(source, context);
 	}
-	
-	public void revalidate() {
-		this.condition.finish(true);
-		if (trueBlock != null) trueBlock.revalidate();
-		if (falseBlock != null) falseBlock.revalidate();
-	}
 }
@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.sqf;
+
+import cz.zipek.sqflint.linter.Options;
+import cz.zipek.sqflint.linter.SQFVariable;
+import java.util.Arrays;
+
+/**
+ * Bindings of variables in contexts that are currently open.
+ * Every symbol has its own stack of bindings, innermost on top, so name
+ * used in the current context is resolved without walking the parent
+ * contexts.
+ *
+ * Contexts are entered and left in the same order the parser does it.
+ * Lookups from contexts that aren't open still walk the parents.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class SQFScopeIndex {
+	private final Options options;
+	
+	// Top binding of every symbol
+	private Binding[] bindings = new Binding[256];
+	
+	private SQFContext[] open = new SQFContext[16];
+	// All bindings of open context
+	private Binding[] contextBindings = new Binding[16];
+	// Index of outermost context visible from open context
+	private int[] boundaries = new int[16];
+	private int depth = 0;
+
+	public SQFScopeIndex(Options options) {
+		this.options = options;
+	}
+	
+	/**
+	 * Opens new innermost context. Variables already present in the
+	 * context are bound too.
+	 * 
+	 * @param context
+	 */
+	public void enter(SQFContext context) {
+		if (depth == open.length) {
+			open = Arrays.copyOf(open, depth * 2);
+			contextBindings = Arrays.copyOf(contextBindings, depth * 2);
+			boundaries = Arrays.copyOf(boundaries, depth * 2);
+		}
+		
+		open[depth] = context;
+		contextBindings[depth] = null;
+		depth++;
+		updateBoundaries(depth - 1);
+	}
+	
+	/**
+	 * Closes innermost context.
+	 * 
+	 * @param context context being closed, ignored if it isn't innermost
+	 */
+	public void exit(SQFContext context) {
+		if (depth == 0 || open[depth - 1] != context) {
+			return;
+		}
+		
+		depth--;
+		for (Binding binding = contextBindings[depth]; binding != null; binding = binding.next) {
+			bindings[binding.symbol] = binding.below;
+		}
+		open[depth] = null;
+		contextBindings[depth] = null;
+	}
+	
+	/**
+	 * @param context
+	 * @return if specified context is the innermost open context
+	 */
+	public boolean isCurrent(SQFContext context) {
+		return depth > 0 && open[depth - 1] == context;
+	}
+	
+	/**
+	 * Finds variable visible from innermost context.
+	 * 
+	 * @param symbol
+	 * @param local only look into innermost context
+	 * @return variable or null if it isn't visible
+	 */
+	public SQFVariable find(int symbol, boolean local) {
+		if (symbol >= bindings.length || bindings[symbol] == null) {
+			return null;
+		}
+		
+		Binding top = bindings[symbol];
+		int limit = local ? depth - 1 : boundaries[depth - 1];
+		
+		return top.depth >= limit ? top.variable : null;
+	}
+	
+	/**
+	 * Returns context where variable that isn't visible from innermost
+	 * context is defined.
+	 * 
+	 * @param local variable is defined by private assignment
+	 * @return context
+	 */
+	public SQFContext getDefiningContext(boolean local) {
+		return open[local ? depth - 1 : boundaries[depth - 1]];
+	}
+	
+	/**
+	 * Adds variable defined in context, does nothing if the context isn't open.
+	 * 
+	 * @param context
+	 * @param symbol
+	 * @param variable 
+	 */
+	public void bind(SQFContext context, int symbol, SQFVariable variable) {
+		int index = indexOf(context);
+		if (index < 0) {
+			return;
+		}
+		
+		if (symbol >= bindings.length) {
+			bindings = Arrays.copyOf(bindings, Math.max(symbol + 1, bindings.length * 2));
+		}
+		
+		Binding binding = new Binding(symbol, index, variable);
+		binding.next = contextBindings[index];
+		contextBindings[index] = binding;
+		
+		// Bindings of inner contexts stay above
+		Binding above = null;
+		Binding below = bindings[symbol];
+		while (below != null && below.depth > index) {
+			above = below;
+			below = below.below;
+		}
+		binding.below = below;
+		if (above == null) {
+			bindings[symbol] = binding;
+		} else {
+			above.below = binding;
+		}
+	}
+	
+	private void updateBoundaries(int from) {
+		boolean separation = options.isContextSeparationEnabled();
+		for (int i = from; i < depth; i++) {
+			if (i == 0 || (separation && open[i].isNewThread())) {
+				boundaries[i] = i;
+			} else {
+				boundaries[i] = boundaries[i - 1];
+			}
+		}
+	}
+	
+	private int indexOf(SQFContext context) {
+		for (int i = depth - 1; i >= 0; i--) {
+			if (open[i] == context) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	private static class Binding {
+		private final int symbol;
+		private final int depth;
+		private final SQFVariable variable;
+		
+		// Binding of the same symbol in outer context
+		private Binding below;
+		// Next binding of the same context
+		private Binding next;
+
+		Binding(int symbol, int depth, SQFVariable variable) {
+			this.symbol = symbol;
+			this.depth = depth;
+			this.variable = variable;
+		}
+	}
+}
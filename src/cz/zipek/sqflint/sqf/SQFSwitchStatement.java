@@ -65,13 +65,13 @@ public class SQFSwitchStatement extends SQFUnit {
 	}
 
 	@Override
-	public void revalidate() {
-		if (expression != null) expression.revalidate();
+	public void finishDeferred() {
+		if (expression != null) expression.finishDeferred();
 		
 		for (SQFCaseStatement c : cases) {
-			c.revalidate();
+			c.finishDeferred();
 		}
 		
-		if (defaultBlock != null) defaultBlock.revalidate();
+		if (defaultBlock != null) defaultBlock.finishDeferred();
 	}
 }
@@ -46,8 +46,8 @@ public class SQFTryStatement extends SQFUnit {
 	}
 
 	@Override
-	public void revalidate() {
-		if (tryBlock != null) tryBlock.revalidate();
-		if (catchBlock != null) catchBlock.revalidate();
+	public void finishDeferred() {
+		if (tryBlock != null) tryBlock.finishDeferred();
+		if (catchBlock != null) catchBlock.finishDeferred();
 	}
 }
@@ -48,8 +48,12 @@ public class SQFUnit {
 	public SQFContext getContext() {
 		return context;
 	}
-	
-	public void revalidate() {
+
+	/**
+	 * Analyzes expressions of this unit in the order they were parsed.
+	 * Used for loop bodies, which are analyzed after the loop operand.
+	 */
+	public void finishDeferred() {
 		
 	}
 }
@@ -46,8 +46,8 @@ public class SQFWhileStatement extends SQFUnit {
 	}
 
 	@Override
-	public void revalidate() {
-		if (condition != null) condition.revalidate();
-		if (block != null) block.revalidate();
+	public void finishDeferred() {
+		if (condition != null) condition.finishDeferred();
+		if (block != null) block.finishDeferred();
 	}
 }
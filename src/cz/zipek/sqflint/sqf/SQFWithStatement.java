@@ -47,8 +47,8 @@ public class SQFWithStatement extends SQFUnit {
 	}
 
 	@Override
-	public void revalidate() {
-		if (with != null) with.revalidate();
-		if (block != null) block.revalidate();
+	public void finishDeferred() {
+		if (with != null) with.finishDeferred();
+		if (block != null) block.finishDeferred();
 	}
 }
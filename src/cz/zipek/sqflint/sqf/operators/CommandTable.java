@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.sqf.operators;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Binary form of commands list, compiled from commands.txt during build.
+ * Loading it doesn't need any regular expressions.
+ * 
+ * Format: magic, version, count and for every command its name, flags
+ * (empty left/right side allowed) and bit masks of left and right types.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class CommandTable {
+	private static final int MAGIC = 0x53514643;
+	private static final int VERSION = 1;
+	
+	private static final int LEFT_EMPTY = 1;
+	private static final int RIGHT_EMPTY = 2;
+	
+	/**
+	 * Compiles commands list.
+	 * Usage: CommandTable commands.txt commands.bin
+	 * 
+	 * @param args
+	 * @throws IOException 
+	 */
+	public static void main(String[] args) throws IOException {
+		Map<String, Operator> operators = new TreeMap<>();
+		
+		try (InputStream in = new FileInputStream(args[0])) {
+			OperatorRegistry.loadCommands(operators, in);
+		}
+		
+		try (OutputStream out = new FileOutputStream(args[1])) {
+			write(operators, out);
+		}
+	}
+	
+	/**
+	 * Writes commands in binary form.
+	 * 
+	 * @param operators generic operators to be written
+	 * @param output
+	 * @throws IOException 
+	 */
+	static void write(Map<String, Operator> operators, OutputStream output) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+		
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(operators.size());
+		
+		for (Operator operator : operators.values()) {
+			GenericOperator command = (GenericOperator)operator;
+			
+			out.writeUTF(command.getName());
+			out.writeByte(
+				(command.isLeftEmptyAllowed() ? LEFT_EMPTY : 0)
+				| (command.isRightEmptyAllowed() ? RIGHT_EMPTY : 0)
+			);
+			out.writeByte(toMask(command.getLeft()));
+			out.writeByte(toMask(command.getRight()));
+		}
+		
+		out.flush();
+	}
+	
+	/**
+	 * Reads commands written by write. Commands that already exist
+	 * (special operators) are left as they are.
+	 * 
+	 * @param operators
+	 * @param input
+	 * @throws IOException 
+	 */
+	static void read(Map<String, Operator> operators, InputStream input) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+		
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException("Unsupported commands table");
+		}
+		
+		GenericOperator.Type[] types = GenericOperator.Type.values();
+		int count = in.readInt();
+		
+		for (int i = 0; i < count; i++) {
+			String name = in.readUTF();
+			int flags = in.readByte();
+			int left = in.readByte();
+			int right = in.readByte();
+			
+			if (operators.containsKey(name)) {
+				continue;
+			}
+			
+			GenericOperator command = new GenericOperator(name);
+			for (GenericOperator.Type type : types) {
+				if ((left & (1 << type.ordinal())) != 0) {
+					command.addLeft(type);
+				}
+				if ((right & (1 << type.ordinal())) != 0) {
+					command.addRight(type);
+				}
+			}
+			command.allowLeftEmpty((flags & LEFT_EMPTY) != 0);
+			command.allowRightEmpty((flags & RIGHT_EMPTY) != 0);
+			
+			operators.put(name, command);
+		}
+	}
+	
+	private static int toMask(List<GenericOperator.Type> types) {
+		int mask = 0;
+		for (GenericOperator.Type type : types) {
+			mask |= 1 << type.ordinal();
+		}
+		return mask;
+	}
+}
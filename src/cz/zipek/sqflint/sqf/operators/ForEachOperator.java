@@ -25,7 +25,6 @@ package cz.zipek.sqflint.sqf.operators;
 
 import cz.zipek.sqflint.linter.Linter;
 import cz.zipek.sqflint.linter.SQFParseException;
-import cz.zipek.sqflint.sqf.SQFBlock;
 import cz.zipek.sqflint.sqf.SQFContext;
 import cz.zipek.sqflint.sqf.SQFExpression;
 
@@ -37,12 +36,7 @@ public class ForEachOperator extends Operator {
 	@Override
 	public void analyze(Linter source, SQFContext context, SQFExpression expression) {
 		if (expression.getLeft() != null && expression.getLeft().isBlock()) {
-			SQFBlock block = expression.getLeft().getBlock();
-			if (block.getInnerContext() != null) {
-				block.getInnerContext().setNewThread(false);
-				block.getInnerContext().clear();
-				block.revalidate();
-			}
+			source.analyzeDeferred(expression.getLeft().getBlock());
 		} else {
 			source.getErrors().add(new SQFParseException(
 				expression.getLeft().getToken(),
@@ -50,4 +44,9 @@ public class ForEachOperator extends Operator {
 			));
 		}
 	}
+	
+	@Override
+	public boolean isLeftBlockInline() {
+		return true;
+	}
 }
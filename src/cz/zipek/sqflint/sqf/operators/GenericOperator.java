@@ -72,6 +72,26 @@ public class GenericOperator extends Operator {
 		right.add(type);
 	}
 	
+	public String getName() {
+		return name;
+	}
+	
+	List<Type> getLeft() {
+		return left;
+	}
+	
+	List<Type> getRight() {
+		return right;
+	}
+	
+	boolean isLeftEmptyAllowed() {
+		return leftEmpty;
+	}
+	
+	boolean isRightEmptyAllowed() {
+		return rightEmpty;
+	}
+	
 	private boolean isOfType(SQFUnit unit, Type type) {
 		if (type == Type.ANY)
 			return true;
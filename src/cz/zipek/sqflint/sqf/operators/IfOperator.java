@@ -79,7 +79,7 @@ public class IfOperator extends Operator {
 		
 		// Only then, exitWith and throw can be used after if
 		if (!expression.getRight().getRight().isCommand() ||
-			!expected.contains(expression.getRight().getRight().getIdentifier().toLowerCase())
+			!expected.contains(expression.getRight().getRight().getIdentifier())
 		) {
 			source.getErrors().add(new SQFParseException(expression.getRight().getRight().getToken(), "Expected then, exitWith or throw."));
 		}
@@ -36,4 +36,15 @@ public class Operator {
 	public void analyze(Linter source, SQFContext context, SQFExpression expression) {
 		
 	}
+	
+	/**
+	 * Code block on the left side of the operator can be executed in the
+	 * current thread, with access to local variables. Such block is
+	 * analyzed by the operator, after the right side.
+	 * 
+	 * @return if the left block is executed in the current thread
+	 */
+	public boolean isLeftBlockInline() {
+		return false;
+	}
 }
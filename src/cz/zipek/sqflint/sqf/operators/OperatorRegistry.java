@@ -0,0 +1,271 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.sqf.operators;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Read-only table of known commands, keyed by lowercased command name.
+ * Commands are loaded once and the table is shared by all options, so
+ * options created for every linted file don't have to copy it.
+ * 
+ * Uses open addressing with linear probing, the table is at most half full.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public final class OperatorRegistry {
+	private static OperatorRegistry defaultRegistry;
+	
+	private final String[] keys;
+	private final Operator[] values;
+	private final int mask;
+	private final int size;
+	
+	private OperatorRegistry(Map<String, Operator> operators) {
+		int capacity = 4;
+		while (capacity < operators.size() * 2) {
+			capacity <<= 1;
+		}
+		
+		keys = new String[capacity];
+		values = new Operator[capacity];
+		mask = capacity - 1;
+		size = operators.size();
+		
+		operators.forEach((name, operator) -> {
+			int index = hash(name) & mask;
+			while (keys[index] != null) {
+				index = (index + 1) & mask;
+			}
+			keys[index] = name;
+			values[index] = operator;
+		});
+	}
+	
+	/**
+	 * Creates registry from specified operators.
+	 * 
+	 * @param operators
+	 * @return 
+	 */
+	public static OperatorRegistry of(Map<String, Operator> operators) {
+		return new OperatorRegistry(operators);
+	}
+	
+	/**
+	 * Loads registry with commands from resources, loaded only once.
+	 * 
+	 * @return shared registry
+	 * @throws IOException 
+	 */
+	public static synchronized OperatorRegistry getDefault() throws IOException {
+		if (defaultRegistry == null) {
+			defaultRegistry = load(true);
+		}
+		return defaultRegistry;
+	}
+	
+	/**
+	 * @param name lowercased command name
+	 * @return operator or null if there is no such command
+	 */
+	public Operator get(String name) {
+		int index = hash(name) & mask;
+		while (keys[index] != null) {
+			if (keys[index].equals(name)) {
+				return values[index];
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+	
+	/**
+	 * @param name lowercased command name
+	 * @return if the command exists
+	 */
+	public boolean containsKey(String name) {
+		return get(name) != null;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	private static int hash(String name) {
+		int hash = name.hashCode();
+		return hash ^ (hash >>> 16);
+	}
+	
+	/**
+	 * Creates registry with all known commands.
+	 * 
+	 * @param compiled use compiled commands table when it's available
+	 * @return
+	 * @throws IOException 
+	 */
+	static OperatorRegistry load(boolean compiled) throws IOException {
+		Map<String, Operator> operators = new HashMap<>();
+		
+		operators.put("params", new ParamsOperator());
+		operators.put("setvariable", new SetVariableOperator());
+		operators.put("execvm", new PathLoader());
+		operators.put("preprocessfile", new PathLoader());
+		operators.put("preprocessfilelinenumbers", new PathLoader());
+		operators.put("loadfile", new PathLoader());
+		operators.put("if", new IfOperator());
+		operators.put("then", new ThenOperator());
+		operators.put("exitwith", new ExitWithOperator());
+		operators.put("foreach", new ForEachOperator());
+		operators.put("count", new CountOperator());
+		
+		// Compiled table is created by build, text list is used when
+		// running from sources
+		InputStream table = compiled ?
+			OperatorRegistry.class.getResourceAsStream("/res/commands.bin")
+			:
+			null;
+		if (table != null) {
+			try (InputStream in = table) {
+				CommandTable.read(operators, in);
+			}
+		} else {
+			try (InputStream in = OperatorRegistry.class.getResourceAsStream("/res/commands.txt")) {
+				loadCommands(operators, in);
+			}
+		}
+		
+		operators.put("&&", operators.get("and"));
+		operators.put("||", operators.get("or"));
+		
+		return new OperatorRegistry(operators);
+	}
+
+	/**
+	 * Parses commands list.
+	 * 
+	 * @param operators
+	 * @param in commands list in text form
+	 * @throws IOException 
+	 */
+	static void loadCommands(Map<String, Operator> operators, InputStream in) throws IOException {
+		// Binary commands
+		Pattern bre = Pattern.compile("(?i)b:([a-z0-9,]*) ([a-z0-9_]*) ([a-z0-9,]*)");
+		// Unary commands
+		Pattern ure = Pattern.compile("(?i)u:([a-z0-9_]*) ([a-z0-9,]*)");
+		// Noargs commands
+		Pattern nre = Pattern.compile("(?i)n:([a-z0-9_]*)");
+		
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+		
+		// Read line by line
+		String line;
+		while((line = reader.readLine()) != null) {
+			String ident = null;
+			String[] left = null;
+			String[] right = null;
+			
+			// Try to match one if the command regexp
+			Matcher m = bre.matcher(line);
+			if (m.find()) {
+				ident = m.group(2).toLowerCase();
+				
+				left = m.group(1).split(",");
+				right = m.group(3).split(",");
+			}
+			
+			m = ure.matcher(line);
+			if (m.find()) {
+				ident = m.group(1).toLowerCase();
+				
+				right = m.group(2).split(",");
+			}
+			
+			m = nre.matcher(line);
+			if (m.find()) {
+				ident = m.group(1).toLowerCase();
+			}
+			
+			if (ident != null) {
+				if (!operators.containsKey(ident)) {
+					operators.put(ident, new GenericOperator(ident));
+				}
+				
+				Operator op = operators.get(ident);
+				if (op instanceof GenericOperator) {					
+					GenericOperator genop = (GenericOperator)op;
+					for(GenericOperator.Type ttype : convertToTypes(left)) {
+						genop.addLeft(ttype);
+					}
+					for(GenericOperator.Type ttype : convertToTypes(right)) {
+						genop.addRight(ttype);
+					}
+					
+					if (left == null) {
+						genop.allowLeftEmpty(true);
+					}
+					
+					if (right == null) {
+						genop.allowRightEmpty(true);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Converts string type definitions to enums.
+	 * @param values
+	 * @return 
+	 */
+	private static GenericOperator.Type[] convertToTypes(String[] values) {
+		if (values == null) {
+			return new GenericOperator.Type[0];
+		}
+		
+		Set<GenericOperator.Type> types = new HashSet<>();
+		for(String tname : values) {
+			GenericOperator.Type ttype;
+			
+			try {
+				ttype = GenericOperator.Type.valueOf(tname.toUpperCase());
+			} catch(IllegalArgumentException e) {
+				ttype = GenericOperator.Type.ANY;
+			}
+			
+			types.add(ttype);
+		}
+		
+		return types.toArray(new GenericOperator.Type[0]);
+	}
+}
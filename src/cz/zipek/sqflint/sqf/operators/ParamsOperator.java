@@ -81,10 +81,10 @@ public class ParamsOperator extends Operator {
 	 */
 	private boolean handleParamLiteral(Linter source, SQFContext context, SQFString literal) {
 		// Load variable name without quotes and case insensitive
-		String ident = literal.getStringContents().toLowerCase();
+		int symbol = source.getSymbols().intern(literal.getStringContents());
 
 		// Load variable
-		SQFVariable var = context.getVariable(ident, literal.getStringContents(), true);
+		SQFVariable var = context.getVariable(symbol, literal.getStringContents(), true);
 		
 		// Actual variable name token (without quotes)
 		Token unquoted = new Token(SQFParser.IDENTIFIER, literal.getStringContents());
@@ -42,7 +42,7 @@ public class SetVariableOperator extends Operator {
     public void analyze(Linter source, SQFContext context, SQFExpression expression) {
         SQFExpression right = expression.getRight();
         SQFExpression left = expression.getLeft();
-        if (left != null && left.getIdentifier().toLowerCase().contains("missionnamespace")) {
+        if (left != null && left.getIdentifier().contains("missionnamespace")) {
             if (right != null && right.getMain() != null) {
                 if (right.getMain() instanceof SQFArray) {
                         handleParams(source, context, (SQFArray)right.getMain());
@@ -68,10 +68,10 @@ public class SetVariableOperator extends Operator {
      */
     private boolean handleParamLiteral(Linter source, SQFContext context, SQFString literal) {
         // Load variable name without quotes and case insensitive
-        String ident = literal.getStringContents().toLowerCase();
+        int symbol = source.getSymbols().intern(literal.getStringContents());
 
         // Load variable
-        SQFVariable var = context.getVariable(ident, literal.getStringContents(), true);
+        SQFVariable var = context.getVariable(symbol, literal.getStringContents(), true);
 
         // Actual variable name token (without quotes)
         Token unquoted = new Token(SQFParser.IDENTIFIER, literal.getStringContents());
@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class LatencyHistogramTest {
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertEquals(0, histogram.getPercentile(50));
+		
+		for (long i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000);
+		}
+		
+		Assert.assertEquals(1000, histogram.getCount());
+		Assert.assertEquals(1000000, histogram.getMax());
+		
+		assertClose(500000, histogram.getPercentile(50));
+		assertClose(950000, histogram.getPercentile(95));
+		assertClose(990000, histogram.getPercentile(99));
+		Assert.assertEquals(1000000, histogram.getPercentile(100));
+	}
+	
+	@Test
+	public void testBuckets() {
+		for (long value = 0; value < 100000; value++) {
+			int index = LatencyHistogram.indexOf(value);
+			Assert.assertTrue(value <= LatencyHistogram.upperBound(index));
+			Assert.assertTrue(index == 0 || value > LatencyHistogram.upperBound(index - 1));
+		}
+		
+		Assert.assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.indexOf(Long.MAX_VALUE)));
+	}
+	
+	private void assertClose(long expected, long actual) {
+		Assert.assertTrue(expected + " <= " + actual, actual >= expected);
+		Assert.assertTrue(expected + " ~ " + actual, actual <= expected * 1.125);
+	}
+}
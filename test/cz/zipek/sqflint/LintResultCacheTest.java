@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint;
+
+import cz.zipek.sqflint.linter.Options;
+import cz.zipek.sqflint.linter.SqfFile;
+import cz.zipek.sqflint.output.TextOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class LintResultCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testReplay() throws Exception {
+		Path root = folder.newFolder("mission").toPath();
+		Path header = root.resolve("header.hpp");
+		Path script = root.resolve("script.sqf");
+		
+		write(header, "#define VALUE _undefined\n");
+		String contents = "#include \"header.hpp\"\n_a = VALUE;\n_b = _missing;\n";
+		
+		LintResultCache cache = new LintResultCache(folder.newFolder("cache").toPath());
+		Options options = createOptions(root, script);
+		
+		Assert.assertNull(cache.get(script.toString(), contents, options));
+		
+		SqfFile sqfFile = new SqfFile(options, contents, script.toString());
+		int code = sqfFile.process();
+		LintResultCache.Entry stored = cache.put(script.toString(), contents, options, sqfFile, code);
+		
+		// Entry contains the same output as printing the file directly
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		try (PrintStream stream = new PrintStream(err)) {
+			sqfFile.print(new PrintStream(new ByteArrayOutputStream()), stream);
+		}
+		Assert.assertArrayEquals(err.toByteArray(), stored.getErr());
+		Assert.assertTrue(stored.getErr().length > 0);
+		
+		LintResultCache.Entry cached = cache.get(script.toString(), contents, createOptions(root, script));
+		Assert.assertNotNull(cached);
+		Assert.assertEquals(code, cached.getCode());
+		Assert.assertArrayEquals(stored.getOut(), cached.getOut());
+		Assert.assertArrayEquals(stored.getErr(), cached.getErr());
+		
+		// Different contents or options
+		Assert.assertNull(cache.get(script.toString(), contents + "_c = 1;\n", options));
+		Options changed = createOptions(root, script);
+		changed.getSkippedVariables().add("_missing");
+		Assert.assertNull(cache.get(script.toString(), contents, changed));
+		
+		// Changed include, new cache instance as hashes are kept for single run
+		write(header, "#define VALUE 1\n");
+		LintResultCache next = new LintResultCache(folder.getRoot().toPath().resolve("cache"));
+		Assert.assertNull(next.get(script.toString(), contents, options));
+	}
+	
+	@Test
+	public void testMissingInclude() throws Exception {
+		Path root = folder.newFolder("mission").toPath();
+		Path script = root.resolve("script.sqf");
+		String contents = "#include \"header.hpp\"\n_a = 1;\n";
+		
+		Path directory = folder.newFolder("cache").toPath();
+		LintResultCache cache = new LintResultCache(directory);
+		Options options = createOptions(root, script);
+		
+		SqfFile sqfFile = new SqfFile(options, contents, script.toString());
+		cache.put(script.toString(), contents, options, sqfFile, sqfFile.process());
+		
+		Assert.assertNotNull(new LintResultCache(directory).get(script.toString(), contents, options));
+		
+		// Include appeared
+		write(root.resolve("header.hpp"), "#define VALUE 1\n");
+		Assert.assertNull(new LintResultCache(directory).get(script.toString(), contents, options));
+	}
+	
+	private Options createOptions(Path root, Path script) throws Exception {
+		Options options = new Options();
+		options.setOutputFormatter(new TextOutput(script.toString()));
+		options.setRootPath(root.toString());
+		return options;
+	}
+	
+	private void write(Path path, String contents) throws Exception {
+		Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint;
+
+import cz.zipek.sqflint.linter.Options;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Sends messages to server through redirected standard streams.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class SQFLintServerTest {
+	private static final int DOCUMENTS = 4;
+	private static final int CHANGES = 80;
+	
+	/**
+	 * Edits of the same document linted by multiple workers have to give
+	 * the same results as when linted one by one.
+	 * @throws Exception 
+	 */
+	@Test
+	public void testConcurrentChanges() throws Exception {
+		StringBuilder input = new StringBuilder();
+		int id = 0;
+		
+		for (int document = 0; document < DOCUMENTS; document++) {
+			StringBuilder contents = new StringBuilder();
+			for (int line = 0; line < 30; line++) {
+				contents.append("private _a").append(line).append(" = _a").append(line - 1).append(" + 1;\n");
+			}
+			
+			input.append(new JSONObject()
+				.put("id", id++)
+				.put("file", "tests/document" + document + ".sqf")
+				.put("contents", contents.toString())
+			).append('\n');
+		}
+		
+		for (int change = 0; change < CHANGES; change++) {
+			for (int document = 0; document < DOCUMENTS; document++) {
+				JSONObject position = new JSONObject()
+					.put("line", (change * 7 + document) % (30 + change))
+					.put("character", 0);
+				
+				input.append(new JSONObject()
+					.put("id", id++)
+					.put("type", "change")
+					.put("file", "tests/document" + document + ".sqf")
+					.put("changes", new JSONArray().put(new JSONObject()
+						.put("range", new JSONObject().put("start", position).put("end", position))
+						.put("text", "_a" + change + " = _b" + change + ";\n")
+					))
+				).append('\n');
+			}
+		}
+		
+		Map<Integer, String> expected = responses(input.toString(), 1);
+		assertEquals(id, expected.size());
+		
+		for (int round = 0; round < 3; round++) {
+			assertEquals(expected, responses(input.toString(), 8));
+		}
+	}
+	
+	/**
+	 * Changes of document that was dropped have to be answered, so client
+	 * knows it has to send the full contents.
+	 * @throws Exception 
+	 */
+	@Test
+	public void testChangeOfDroppedDocument() throws Exception {
+		StringBuilder input = new StringBuilder();
+		for (int document = 0; document <= SQFLintServer.MAX_DOCUMENTS; document++) {
+			input.append(new JSONObject()
+				.put("id", document)
+				.put("file", "tests/document" + document + ".sqf")
+				.put("contents", "private _a = 1;")
+			).append('\n');
+		}
+		
+		input.append(new JSONObject()
+			.put("id", "dropped")
+			.put("type", "change")
+			.put("file", "tests/document0.sqf")
+			.put("changes", new JSONArray().put(new JSONObject().put("text", "_b = 1;")))
+		).append('\n');
+		
+		String[] responses = run(input.toString(), 2).split("\n");
+		assertEquals(SQFLintServer.MAX_DOCUMENTS + 2, responses.length);
+		
+		JSONObject error = null;
+		for (String line : responses) {
+			JSONObject response = new JSONObject(line);
+			if ("dropped".equals(response.opt("id"))) {
+				error = response;
+			}
+		}
+		
+		assertNotNull("Change should be answered", error);
+		assertEquals("error", error.getString("type"));
+		assertEquals("tests/document0.sqf", error.getString("file"));
+	}
+	
+	/**
+	 * @return responses without timing by message id
+	 */
+	private Map<Integer, String> responses(String input, int workers) throws Exception {
+		Map<Integer, String> responses = new TreeMap<>();
+		for (String line : run(input, workers).split("\n")) {
+			JSONObject response = new JSONObject(line);
+			response.remove("timeneeded");
+			responses.put(response.getInt("id"), response.toString());
+		}
+		
+		return responses;
+	}
+	
+	/**
+	 * Runs server until all messages are answered.
+	 * 
+	 * @return server output
+	 */
+	private String run(String input, int workers) throws Exception {
+		InputStream stdin = System.in;
+		PrintStream stdout = System.out;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		
+		try {
+			System.setIn(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+			System.setOut(new PrintStream(output, true, "UTF-8"));
+			
+			new SQFLintServer(new Options(), workers).start();
+		} finally {
+			System.setIn(stdin);
+			System.setOut(stdout);
+		}
+		
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint;
+
+import cz.zipek.sqflint.linter.Linter;
+import java.util.concurrent.ExecutionException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class SqfLintEngineTest {
+	@Test
+	public void testLint() throws Exception {
+		try (SqfLintEngine engine = new SqfLintEngine()) {
+			LintResult result = engine.lint("test.sqf", "_a = _b;\n").get();
+			
+			Assert.assertEquals(Linter.CODE_OK, result.getCode());
+			Assert.assertEquals(0, result.getErrors().size());
+			Assert.assertEquals(1, result.getWarnings().size());
+			Assert.assertEquals(1, result.getWarnings().get(0).getToken().beginLine);
+			Assert.assertTrue(result.getVariables().containsKey("_a"));
+			
+			result = engine.lint(
+				"test.sqf",
+				"_a = ;\n",
+				(options) -> options.setExitCodeEnabled(true)
+			).get();
+			
+			Assert.assertEquals(Linter.CODE_ERR, result.getCode());
+			Assert.assertEquals(1, result.getErrors().size());
+		}
+	}
+	
+	@Test
+	public void testOverrides() throws Exception {
+		try (SqfLintEngine engine = new SqfLintEngine()) {
+			LintResult result = engine.lint(
+				"test.sqf",
+				"_a = _b;\n",
+				(options) -> options.getSkippedVariables().add("_b")
+			).get();
+			
+			Assert.assertEquals(0, result.getWarnings().size());
+			
+			// Overrides only apply to single file
+			result = engine.lint("test.sqf", "_a = _b;\n").get();
+			
+			Assert.assertEquals(1, result.getWarnings().size());
+		}
+	}
+	
+	@Test
+	public void testReadFile() throws Exception {
+		try (SqfLintEngine engine = new SqfLintEngine()) {
+			LintResult result = engine.lint("tests/define.sqf", null).get();
+			
+			Assert.assertNull(result.getPreProcessorError());
+			Assert.assertEquals("tests/define.sqf", result.getFilePath());
+			
+			try {
+				engine.lint("tests/missing.sqf", null).get();
+				Assert.fail("Missing file should fail");
+			} catch (ExecutionException ex) {
+				// Expected
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.linter;
+
+import cz.zipek.sqflint.parser.Token;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class DiagnosticListTest {
+	@Test
+	public void testRemove() {
+		DiagnosticList<Warning> list = new DiagnosticList<>();
+		List<Warning> expected = new ArrayList<>();
+		
+		for (int i = 0; i < 100; i++) {
+			Warning warning = create(i);
+			list.add(warning);
+			expected.add(warning);
+		}
+		
+		for (int i = 0; i < 100; i += 3) {
+			Assert.assertTrue(list.remove(expected.get(i)));
+			Assert.assertFalse(list.remove(expected.get(i)));
+		}
+		expected.removeIf((w) -> Integer.parseInt(w.getMessage()) % 3 == 0);
+		
+		Assert.assertEquals(expected.size(), list.size());
+		Assert.assertEquals(expected, new ArrayList<>(list));
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertSame(expected.get(i), list.get(i));
+		}
+		
+		// Removing after the list was compacted
+		list.compact();
+		Assert.assertEquals(expected, new ArrayList<>(list));
+		Assert.assertTrue(list.remove(expected.remove(10)));
+		Assert.assertEquals(expected, new ArrayList<>(list));
+	}
+	
+	@Test
+	public void testReuse() {
+		DiagnosticList<Warning> list = new DiagnosticList<>();
+		
+		// Same problem is retracted and sent again many times
+		for (int i = 0; i < 1000; i++) {
+			Warning warning = create(i);
+			list.add(warning);
+			Assert.assertTrue(list.remove(warning));
+			list.add(warning);
+		}
+		
+		Assert.assertEquals(1000, list.size());
+		Assert.assertEquals("42", list.get(42).getMessage());
+	}
+	
+	@Test
+	public void testCopied() {
+		DiagnosticList<Warning> original = new DiagnosticList<>();
+		DiagnosticList<Warning> copy = new DiagnosticList<>();
+		Warning first = create(0);
+		Warning second = create(1);
+		
+		original.addAll(Arrays.asList(first, second));
+		copy.addAll(original);
+		
+		// Every list keeps its own handle of the problem
+		Assert.assertTrue(copy.remove(first));
+		Assert.assertEquals(Arrays.asList(second), copy);
+		Assert.assertEquals(Arrays.asList(first, second), original);
+		
+		Assert.assertTrue(original.remove(first));
+		Assert.assertFalse(original.remove(first));
+		Assert.assertEquals(Arrays.asList(second), original);
+	}
+	
+	private Warning create(int index) {
+		Token token = new Token();
+		token.image = String.valueOf(index);
+		return new Warning(token, String.valueOf(index));
+	}
+}
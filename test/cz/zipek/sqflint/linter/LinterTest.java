@@ -28,6 +28,7 @@ import cz.zipek.sqflint.preprocessor.SQFPreprocessor;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -313,6 +314,73 @@ public class LinterTest {
 		assertTrue("Should not throw errors", sqfFile.getLinter().getErrors().isEmpty());
 	}
 	
+	@Test
+	public void testNestedLoops() throws Exception {
+		String[] lines = {
+			"private _total = 0;",
+			"for \"_i\" from 0 to 2 do {",
+			"	{",
+			"		for \"_j\" from 0 to 2 do { _total = _total + _i * _j * _x; };",
+			"	} forEach [1, 2];",
+			"};",
+			"diag_log _total;"
+		};
+		SqfFile sqfFile = parse(String.join("\n", lines));
+		
+		assertEquals(Linter.CODE_OK, sqfFile.process());
+		assertTrue("Should not throw warnings", sqfFile.getLinter().getWarnings().isEmpty());
+		assertTrue("Should not throw errors", sqfFile.getLinter().getErrors().isEmpty());
+		
+		// Every usage is only registered once, no matter how deep it is
+		SQFVariable total = sqfFile.getLinter().getVariables().get("_total");
+		assertEquals(4, total.usage.size());
+		assertEquals(2, total.definitions.size());
+		assertEquals(2, sqfFile.getLinter().getVariables().get("_i").usage.size());
+	}
+
+	@Test
+	public void testLoopOperandBeforeBody() throws Exception {
+		SqfFile sqfFile = parse("{ _sum = _x; } forEach _sum;");
+
+		assertEquals(Linter.CODE_OK, sqfFile.process());
+		assertEquals("Should throw warning", 1, sqfFile.getLinter().getWarnings().size());
+
+		Warning warning = sqfFile.getLinter().getWarnings().get(0);
+
+		assertEquals("Should report correct position", 1, warning.getToken().beginLine);
+		assertEquals("Should report correct position", 24, warning.getToken().beginColumn);
+	}
+
+	@Test
+	public void testLoopVariableBeforeBody() throws Exception {
+		String[] lines = {
+			"for \"_i\" from 0 to 2 do { diag_log _i; };",
+			"for [{_j = 0}, {_j < 3}, {_j = _j + 1}] do { diag_log _j; };",
+			"{ diag_log [_x, _forEachIndex]; } forEach [1, 2];"
+		};
+		SqfFile sqfFile = parse(String.join("\n", lines));
+
+		assertEquals(Linter.CODE_OK, sqfFile.process());
+		assertTrue("Should not throw warnings", sqfFile.getLinter().getWarnings().isEmpty());
+		assertTrue("Should not throw errors", sqfFile.getLinter().getErrors().isEmpty());
+	}
+
+	@Test
+	public void testLoopParamsInOrder() throws Exception {
+		String[] lines = {
+			"{",
+			"	diag_log _unit;",
+			"	params [\"_unit\"];",
+			"	diag_log _unit;",
+			"} forEach [[1], [2]];"
+		};
+		SqfFile sqfFile = parse(String.join("\n", lines));
+
+		assertEquals(Linter.CODE_OK, sqfFile.process());
+		assertEquals("Should throw warning", 1, sqfFile.getLinter().getWarnings().size());
+		assertEquals("Should report correct position", 2, sqfFile.getLinter().getWarnings().get(0).getToken().beginLine);
+	}
+
 	@Test
 	public void testThenWithArray() throws Exception {
 		String[] lines = {
@@ -336,4 +404,83 @@ public class LinterTest {
 		assertTrue("Should not throw warnings", sqfFile.getLinter().getWarnings().isEmpty());
 		assertEquals("Should throw one error", 1, sqfFile.getLinter().getErrors().size());
 	}
+	
+	@Test
+	public void testIncrementalProcess() throws Exception {
+		String[] before = {
+			"private _i = 1;",
+			"{ diag_log _i; _j = 2; } forEach allUnits;",
+			"diag_log _k;",
+			"_a = _i;"
+		};
+		String[] after = {
+			"private _i = 1;",
+			"{ diag_log _i; _j = 2; } forEach allUnits;",
+			"diag_log _k;",
+			"_a = _j + _i;",
+			"diag_log _undefined;"
+		};
+		SqfFile previous = parse(String.join("\n", before));
+		previous.process();
+		
+		SqfFile incremental = parse(String.join("\n", after));
+		SqfFile full = parse(String.join("\n", after));
+		
+		assertEquals(full.process(), incremental.process(previous));
+		assertTrue("Should continue from previous file", incremental.getLinter().isResumed());
+		
+		assertEquals(describe(full), describe(incremental));
+		assertEquals(2, incremental.getLinter().getWarnings().size());
+	}
+	
+	@Test
+	public void testIncrementalProcessWithSyntaxError() throws Exception {
+		SqfFile previous = parse("_a = 1;\n_b = _a;");
+		previous.process();
+		
+		SqfFile incremental = parse("_a = 1;\n_b = _a +;");
+		SqfFile full = parse("_a = 1;\n_b = _a +;");
+		
+		assertEquals(full.process(), incremental.process(previous));
+		assertFalse("Should lint whole file again", incremental.getLinter().isResumed());
+		assertEquals(describe(full), describe(incremental));
+	}
+	
+	@Test
+	public void testIncrementalProcessAfterParseError() throws Exception {
+		String input = ";;\nb c;\n";
+		
+		SqfFile previous = parse(input);
+		previous.process();
+		
+		SqfFile incremental = parse(input);
+		SqfFile full = parse(input);
+		
+		assertEquals(full.process(), incremental.process(previous));
+		assertFalse("Should lint whole file again", incremental.getLinter().isResumed());
+		assertEquals(describe(full), describe(incremental));
+	}
+	
+	/**
+	 * Converts linting result to string that can be compared.
+	 */
+	private String describe(SqfFile sqfFile) {
+		StringBuilder result = new StringBuilder();
+		
+		sqfFile.getLinter().getErrors().forEach((e) -> {
+			result.append("E ").append(e.getMessage()).append("\n");
+		});
+		sqfFile.getLinter().getWarnings().forEach((e) -> {
+			result.append("W ").append(e.toString()).append("\n");
+		});
+		
+		new TreeMap<>(sqfFile.getLinter().getVariables()).forEach((ident, var) -> {
+			result.append("V ").append(ident)
+				.append(" ").append(var.usage.size())
+				.append(" ").append(var.definitions.size())
+				.append("\n");
+		});
+		
+		return result.toString();
+	}
 }
@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.linter;
+
+import cz.zipek.sqflint.output.StreamUtil;
+import cz.zipek.sqflint.output.VoidOutput;
+import cz.zipek.sqflint.parser.Token;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Lints the same files from multiple threads at once.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class ParallelLintTest {
+	private static final int THREADS = 8;
+	private static final int ROUNDS = 10;
+
+	/**
+	 * Results of concurrent runs have to be same as results of sequential run.
+	 * @throws Exception 
+	 */
+	@Test
+	public void testConcurrentRuns() throws Exception {
+		List<Path> files = findFiles();
+		assertFalse(files.isEmpty());
+
+		Map<Path, String> expected = new TreeMap<>();
+		for (Path file : files) {
+			expected.put(file, lint(file));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			List<Path> order = new ArrayList<>();
+
+			for (int round = 0; round < ROUNDS; round++) {
+				for (Path file : files) {
+					order.add(file);
+					results.add(executor.submit(() -> lint(file)));
+				}
+			}
+
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(order.get(i).toString(), expected.get(order.get(i)), results.get(i).get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private List<Path> findFiles() throws IOException {
+		try (Stream<Path> list = Files.list(Paths.get("tests"))) {
+			return list
+				.filter(p -> p.getFileName().toString().endsWith(".sqf"))
+				.sorted()
+				.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Lints file and describes everything the linter found.
+	 */
+	private String lint(Path file) throws Exception {
+		Options options = new Options();
+		options.setOutputFormatter(new VoidOutput());
+		options.setRootPath(file.getParent().toString());
+
+		SqfFile sqfFile = new SqfFile(
+			options,
+			StreamUtil.fileToString(file.toString()),
+			file.toString()
+		);
+
+		StringBuilder result = new StringBuilder();
+		result.append(sqfFile.process()).append('\n');
+
+		if (sqfFile.getPreProcessorError() != null) {
+			result.append(sqfFile.getPreProcessorError().toString()).append('\n');
+			return result.toString();
+		}
+
+		Linter linter = sqfFile.getLinter();
+		for (SQFParseException error : linter.getErrors()) {
+			result.append(error.getJSONMessage()).append('\n');
+		}
+		for (Warning warning : linter.getWarnings()) {
+			result.append(warning.getJSONMessage()).append('\n');
+		}
+		for (Map.Entry<String, SQFVariable> entry : new TreeMap<>(linter.getVariables()).entrySet()) {
+			SQFVariable variable = entry.getValue();
+			result.append(entry.getKey())
+				.append(' ').append(describe(variable.usage))
+				.append(' ').append(describe(variable.definitions))
+				.append('\n');
+		}
+
+		return result.toString();
+	}
+
+	private String describe(List<Token> tokens) {
+		StringBuilder result = new StringBuilder("[");
+		for (Token token : tokens) {
+			result.append(token.beginLine).append(':').append(token.beginColumn).append(',');
+		}
+		return result.append(']').toString();
+	}
+}
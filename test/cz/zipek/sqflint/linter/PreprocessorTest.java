@@ -24,7 +24,11 @@
 package cz.zipek.sqflint.linter;
 
 import cz.zipek.sqflint.linter.Options;
+import cz.zipek.sqflint.preprocessor.SQFIncludeCache;
 import cz.zipek.sqflint.preprocessor.SQFPreprocessor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -67,4 +71,245 @@ public class PreprocessorTest {
 			result
 		);
 	}
+	
+	@Test
+	public void testIncludeCache() throws Exception {
+		Path dir = Files.createTempDirectory("sqflint");
+		Path header = dir.resolve("script_component.hpp");
+		Path file = dir.resolve("test.sqf");
+		Files.write(header, "#define TEST _first\n".getBytes(StandardCharsets.UTF_8));
+		
+		SQFIncludeCache cache = new SQFIncludeCache();
+		String input = "#include \"script_component.hpp\"\ndiag_log TEST;";
+		
+		SQFPreprocessor first = new SQFPreprocessor(new Options(), cache);
+		Assert.assertEquals("\ndiag_log _first;", first.process(input, file.toString(), false));
+		Assert.assertEquals(1, cache.size());
+		
+		// Cached include should yield same macros
+		SQFPreprocessor second = new SQFPreprocessor(new Options(), cache);
+		Assert.assertEquals("\ndiag_log _first;", second.process(input, file.toString(), false));
+		Assert.assertEquals(1, second.getIncludes().size());
+		Assert.assertTrue(second.getMacros().containsKey("TEST"));
+		
+		// Changed include has to be preprocessed again
+		Files.write(header, "#define TEST _second_value\n".getBytes(StandardCharsets.UTF_8));
+		SQFPreprocessor third = new SQFPreprocessor(new Options(), cache);
+		Assert.assertEquals("\ndiag_log _second_value;", third.process(input, file.toString(), false));
+		
+		Files.delete(header);
+		Files.delete(dir);
+	}
+	
+	@Test
+	public void testMacroMatching() throws Exception {
+		String result = parse(
+			"#define A first\n" +
+			"#define AB second\n" +
+			"#define A.B third\n" +
+			"\n" +
+			"x = [AB, A, _A, A_B, A.B, AB];\n" +
+			"x = A"
+		);
+		
+		// Longest macro wins, identifiers aren't split and macro at the
+		// very end of line isn't replaced
+		Assert.assertEquals(
+			"\n" +
+			"\n" +
+			"\n" +
+			"\n" +
+			"x = [second, first, _A, A_B, third, second];\n" +
+			"x = A",
+			result
+		);
+	}
+	
+	@Test
+	public void testMacroArguments() throws Exception {
+		String result = parse(
+			"#define LIST(a,b) [a,a,b##_##a, #b, a1]\n" +
+			"#define DOUBLES(var1,var2) var1##_##var2\n" +
+			"#define ARR(ARG1,ARG12) [ARG1,ARG12]\n" +
+			"x = LIST(1, \"text\");\n" +
+			"y = DOUBLES(prefix,name);\n" +
+			"z = ARR(first,second);\n"
+		);
+		
+		// Every occurrence is replaced, # makes string and ## is removed.
+		// Longer identifiers (a1, ARG12) aren't mistaken for arguments.
+		Assert.assertEquals(
+			"\n" +
+			"\n" +
+			"\n" +
+			"x = [1,1,\"text\"_1, \"\"text\"\", a1];\n" +
+			"y = prefix_name;\n" +
+			"z = [first,second];",
+			result
+		);
+	}
+	
+	@Test
+	public void testEscapedLineEnds() throws Exception {
+		String result = parse(
+			"#define VALUE 1 \\\r\n" +
+			"+ 2\r\n" +
+			"x = VALUE;\r\n" +
+			"y = 3; \\"
+		);
+		
+		// Joined lines are left empty and escape at the end of file is dropped
+		Assert.assertEquals(
+			"\n" +
+			"\n" +
+			"x = 1 + 2;\n" +
+			"y = 3; ",
+			result
+		);
+	}
+	
+	@Test
+	public void testTemplateCounters() throws Exception {
+		SQFPreprocessor preprocessor = new SQFPreprocessor(new Options());
+		preprocessor.process(
+			"#define F(a) [a]\n" +
+			"x = F(1);\n" +
+			"#define F(b) (b)\n" +
+			"y = F(2);",
+			"test.sqf",
+			false
+		);
+		
+		// Redefinition with different argument names has to be compiled again
+		Assert.assertEquals(1, preprocessor.getTemplateHits());
+		Assert.assertEquals(1, preprocessor.getTemplateMisses());
+	}
+	
+	@Test
+	public void testConditions() throws Exception {
+		String result = parse(
+			"#define DEBUG\n" +
+			"#ifdef DEBUG\n" +
+			"debug = 1;\n" +
+			"#else\n" +
+			"debug = 0;\n" +
+			"#endif\n" +
+			"#undef DEBUG\n" +
+			"#ifndef DEBUG\n" +
+			"#ifdef DEBUG\n" +
+			"#define NEVER 1\n" +
+			"#endif\n" +
+			"release = 1;\n" +
+			"#endif\n" +
+			"x = NEVER;"
+		);
+		
+		// Skipped lines are kept empty, so line numbers don't change
+		Assert.assertEquals(
+			"\n" +
+			"\n" +
+			"debug = 1;\n" +
+			"\n" +
+			"\n" +
+			"\n" +
+			"\n" +
+			"\n" +
+			"\n" +
+			"\n" +
+			"\n" +
+			"release = 1;\n" +
+			"\n" +
+			"x = NEVER;",
+			result
+		);
+	}
+	
+	@Test
+	public void testRedefineAfterUndef() throws Exception {
+		String result = parse(
+			"#define F(a) a\n" +
+			"#undef F\n" +
+			"#define F(a,b) a + b\n" +
+			"x = F(1,2);"
+		);
+		
+		Assert.assertEquals("\n\n\nx = 1 + 2;", result);
+	}
+	
+	@Test
+	public void testIncludeCacheConditions() throws Exception {
+		Path dir = Files.createTempDirectory("sqflint");
+		Path header = dir.resolve("script_component.hpp");
+		Path file = dir.resolve("test.sqf");
+		Files.write(header, (
+			"#ifdef DEBUG_MODE_FULL\n" +
+			"#define LOG(a) diag_log a\n" +
+			"#else\n" +
+			"#define LOG(a)\n" +
+			"#endif\n"
+		).getBytes(StandardCharsets.UTF_8));
+		
+		SQFIncludeCache cache = new SQFIncludeCache();
+		String input = "#include \"script_component.hpp\"\nLOG(1);";
+		
+		SQFPreprocessor release = new SQFPreprocessor(new Options(), cache);
+		Assert.assertEquals("\n;", release.process(input, file.toString(), false));
+		
+		// Include depends on macro defined before it, so it can't reuse the first result
+		SQFPreprocessor debug = new SQFPreprocessor(new Options(), cache);
+		Assert.assertEquals("\n\ndiag_log 1;", debug.process("#define DEBUG_MODE_FULL\n" + input, file.toString(), false));
+		Assert.assertEquals(2, cache.size());
+		
+		SQFPreprocessor again = new SQFPreprocessor(new Options(), cache);
+		Assert.assertEquals("\n;", again.process(input, file.toString(), false));
+		Assert.assertEquals(2, cache.size());
+		
+		Files.delete(header);
+		Files.delete(dir);
+	}
+	
+	@Test
+	public void testIncludeCacheDropsOutdatedVariants() throws Exception {
+		Path dir = Files.createTempDirectory("sqflint");
+		Path header = dir.resolve("script_component.hpp");
+		Path file = dir.resolve("test.sqf");
+		Files.write(header, "#ifdef DEBUG\n#define LOG(a) diag_log a\n#endif\n".getBytes(StandardCharsets.UTF_8));
+		
+		SQFIncludeCache cache = new SQFIncludeCache();
+		String input = "#include \"script_component.hpp\"\n";
+		
+		new SQFPreprocessor(new Options(), cache).process(input, file.toString(), false);
+		Assert.assertEquals(1, cache.size());
+		
+		// Variant for the other state of DEBUG replaces the outdated one
+		Files.write(header, "#ifdef DEBUG\n#define LOG(a) a\n#endif\n".getBytes(StandardCharsets.UTF_8));
+		new SQFPreprocessor(new Options(), cache).process("#define DEBUG\n" + input, file.toString(), false);
+		Assert.assertEquals(1, cache.size());
+		
+		Files.delete(header);
+		Files.delete(dir);
+	}
+	
+	@Test
+	public void testIncludeCacheLimit() throws Exception {
+		Path dir = Files.createTempDirectory("sqflint");
+		Path file = dir.resolve("test.sqf");
+		SQFIncludeCache cache = new SQFIncludeCache(2);
+		
+		for (int i = 0; i < 3; i++) {
+			Files.write(dir.resolve(i + ".hpp"), ("#define VALUE" + i + " " + i + "\n").getBytes(StandardCharsets.UTF_8));
+			new SQFPreprocessor(new Options(), cache).process("#include \"" + i + ".hpp\"\n", file.toString(), false);
+		}
+		Assert.assertEquals(2, cache.size());
+		
+		// First header was dropped, it has to be preprocessed again
+		long misses = cache.getMisses();
+		new SQFPreprocessor(new Options(), cache).process("#include \"0.hpp\"\n", file.toString(), false);
+		Assert.assertEquals(misses + 1, cache.getMisses());
+		
+		for (int i = 0; i < 3; i++) {
+			Files.delete(dir.resolve(i + ".hpp"));
+		}
+		Files.delete(dir);
+	}
 }
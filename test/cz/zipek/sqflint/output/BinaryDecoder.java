@@ -0,0 +1,257 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.output;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Reference decoder of frames written by {@link BinaryOutput}.
+ * Converts every frame to the JSON the server would send in JSON mode.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class BinaryDecoder {
+	private final DataInputStream input;
+	private final List<String> strings = new ArrayList<>();
+	
+	public BinaryDecoder(InputStream input) {
+		this.input = new DataInputStream(input);
+	}
+	
+	/**
+	 * @return next response or null at the end of the stream
+	 * @throws IOException 
+	 */
+	public JSONObject next() throws IOException {
+		int length;
+		try {
+			length = input.readInt();
+		} catch (EOFException ex) {
+			return null;
+		}
+		
+		byte[] payload = new byte[length];
+		input.readFully(payload);
+		
+		Frame frame = new Frame(payload);
+		int type = frame.readByte();
+		
+		if (type == BinaryOutput.FRAME_JSON) {
+			return new JSONObject(new String(payload, 1, length - 1, StandardCharsets.UTF_8));
+		}
+		
+		if (type != BinaryOutput.FRAME_RESULT) {
+			throw new IOException("Unknown frame type " + type);
+		}
+		
+		JSONObject result = new JSONObject();
+		
+		String id = frame.readString();
+		if (id != null) {
+			result.put("id", new JSONTokener(id).nextValue());
+		}
+		
+		result.put("file", frame.readRef());
+		result.put("timeneeded", frame.readVarint());
+		
+		JSONArray messages = new JSONArray();
+		long count = frame.readVarint();
+		for (long i = 0; i < count; i++) {
+			messages.put(readMessage(frame));
+		}
+		result.put("messages", messages);
+		
+		if (frame.remaining() > 0) {
+			throw new IOException("Unexpected data at the end of frame");
+		}
+		
+		return result;
+	}
+	
+	private JSONObject readMessage(Frame frame) throws IOException {
+		int kind = frame.readByte();
+		JSONObject message;
+		
+		switch (kind) {
+			case BinaryOutput.MESSAGE_ERROR:
+				message = readRange(frame, 0);
+				message.put("type", "error");
+				message.put("message", frame.readString());
+				return message;
+			case BinaryOutput.MESSAGE_WARNING:
+				String filename = frame.readRef();
+				message = readRange(frame, 0);
+				message.put("type", "warning");
+				message.put("filename", filename);
+				message.put("message", frame.readString());
+				return message;
+			case BinaryOutput.MESSAGE_VARIABLE:
+				message = new JSONObject();
+				message.put("type", "variable");
+				message.put("variable", frame.readRef());
+				message.put("comment", frame.readString());
+				message.put("usage", readRanges(frame));
+				message.put("definitions", readRanges(frame));
+				return message;
+			case BinaryOutput.MESSAGE_INCLUDE:
+				message = new JSONObject();
+				message.put("type", "include");
+				message.put("include", frame.readRef());
+				message.put("expandedInclude", frame.readRef());
+				message.put("from", frame.readRef());
+				return message;
+			case BinaryOutput.MESSAGE_MACRO:
+				message = new JSONObject();
+				message.put("type", "macro");
+				message.put("macro", frame.readRef());
+				message.put("arguments", frame.readString());
+				
+				JSONArray definitions = new JSONArray();
+				long count = frame.readVarint();
+				for (long i = 0; i < count; i++) {
+					JSONObject definition = new JSONObject();
+					definition.put("filename", frame.readRef());
+					definition.put("range", readRange(frame, 0));
+					definition.put("value", frame.readString());
+					definitions.put(definition);
+				}
+				message.put("definitions", definitions);
+				return message;
+			default:
+				throw new IOException("Unknown message kind " + kind);
+		}
+	}
+	
+	private JSONArray readRanges(Frame frame) throws IOException {
+		JSONArray ranges = new JSONArray();
+		
+		long count = frame.readVarint();
+		int previous = 0;
+		for (long i = 0; i < count; i++) {
+			JSONObject range = readRange(frame, previous);
+			previous = range.getJSONArray("line").getInt(0);
+			ranges.put(range);
+		}
+		
+		return ranges;
+	}
+	
+	private JSONObject readRange(Frame frame, int previousLine) throws IOException {
+		int beginLine = previousLine + (int)frame.readSigned();
+		int beginColumn = (int)frame.readVarint();
+		
+		long length = frame.readVarint();
+		int endColumn = beginColumn + (int)frame.zigzag(length >>> 1);
+		int endLine = (length & 1) != 0 ? beginLine + (int)frame.readSigned() : beginLine;
+		
+		JSONObject range = new JSONObject();
+		range.put("line", new JSONArray(new int[] { beginLine, endLine }));
+		range.put("column", new JSONArray(new int[] { beginColumn, endColumn }));
+		return range;
+	}
+	
+	/**
+	 * Payload of single frame.
+	 */
+	private class Frame {
+		private final ByteArrayInputStream data;
+		
+		Frame(byte[] payload) {
+			data = new ByteArrayInputStream(payload);
+		}
+		
+		int remaining() {
+			return data.available();
+		}
+		
+		int readByte() throws IOException {
+			int value = data.read();
+			if (value < 0) {
+				throw new EOFException();
+			}
+			return value;
+		}
+		
+		long readVarint() throws IOException {
+			long value = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = readByte();
+				value |= (long)(b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return value;
+				}
+			}
+			throw new IOException("Varint is too long");
+		}
+		
+		long readSigned() throws IOException {
+			return zigzag(readVarint());
+		}
+		
+		long zigzag(long value) {
+			return (value >>> 1) ^ -(value & 1);
+		}
+		
+		String readString() throws IOException {
+			long length = readVarint();
+			if (length == 0) {
+				return null;
+			}
+			
+			byte[] bytes = new byte[(int)(length - 1)];
+			if (data.read(bytes, 0, bytes.length) != bytes.length && bytes.length > 0) {
+				throw new EOFException();
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		
+		String readRef() throws IOException {
+			long ref = readVarint();
+			if (ref == 0) {
+				return null;
+			}
+			
+			if (ref == 1) {
+				String value = readString();
+				strings.add(value);
+				return value;
+			}
+			
+			if (ref - 2 >= strings.size()) {
+				throw new IOException("Unknown string " + (ref - 2));
+			}
+			return strings.get((int)(ref - 2));
+		}
+	}
+}
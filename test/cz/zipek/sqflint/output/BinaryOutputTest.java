@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.output;
+
+import cz.zipek.sqflint.linter.Options;
+import cz.zipek.sqflint.linter.SqfFile;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class BinaryOutputTest {
+	/**
+	 * Decoded frames have to contain the same data as JSON responses.
+	 * @throws Exception 
+	 */
+	@Test
+	public void testSameAsJSON() throws Exception {
+		List<Path> files;
+		try (Stream<Path> list = Files.list(Paths.get("tests"))) {
+			files = list
+				.filter(p -> p.getFileName().toString().endsWith(".sqf"))
+				.sorted()
+				.collect(Collectors.toList());
+		}
+		
+		BinaryOutput.Session session = new BinaryOutput.Session();
+		ByteArrayOutputStream binary = new ByteArrayOutputStream();
+		PrintStream binaryStream = new PrintStream(binary);
+		List<JSONObject> expected = new ArrayList<>();
+		
+		// Every file twice, second frames only refer to known strings
+		for (int round = 0; round < 2; round++) {
+			for (Path file : files) {
+				SqfFile sqfFile = lint(file);
+				
+				ByteArrayOutputStream json = new ByteArrayOutputStream();
+				new ServerOutput(file.toString(), round).print(sqfFile, new PrintStream(json), System.err);
+				expected.add(new JSONObject(json.toString("UTF-8")));
+				
+				new BinaryOutput(session, file.toString(), round).print(sqfFile, binaryStream, System.err);
+			}
+		}
+		session.printJSON(binaryStream, "{\"type\":\"stats\",\"requests\":10}");
+		
+		BinaryDecoder decoder = new BinaryDecoder(new ByteArrayInputStream(binary.toByteArray()));
+		for (JSONObject response : expected) {
+			JSONObject decoded = decoder.next();
+			Assert.assertNotNull(decoded);
+			
+			response.remove("timeneeded");
+			decoded.remove("timeneeded");
+			Assert.assertTrue(response.toString() + "\n" + decoded.toString(), response.similar(decoded));
+		}
+		
+		JSONObject stats = decoder.next();
+		Assert.assertEquals("stats", stats.getString("type"));
+		Assert.assertEquals(10, stats.getInt("requests"));
+		
+		Assert.assertNull(decoder.next());
+	}
+	
+	private SqfFile lint(Path file) throws Exception {
+		Options options = new Options();
+		options.setOutputVariables(true);
+		options.setRootPath(file.getParent().toString());
+		
+		SqfFile sqfFile = new SqfFile(
+			options,
+			StreamUtil.fileToString(file.toString()),
+			file.toString()
+		);
+		sqfFile.process();
+		
+		return sqfFile;
+	}
+}
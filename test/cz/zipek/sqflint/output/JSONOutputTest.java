@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.output;
+
+import cz.zipek.sqflint.linter.Linter;
+import cz.zipek.sqflint.linter.Options;
+import cz.zipek.sqflint.linter.PreProcessorError;
+import cz.zipek.sqflint.linter.SQFParseException;
+import cz.zipek.sqflint.linter.SQFVariable;
+import cz.zipek.sqflint.linter.SqfFile;
+import cz.zipek.sqflint.linter.Warning;
+import cz.zipek.sqflint.parser.Token;
+import cz.zipek.sqflint.preprocessor.SQFInclude;
+import cz.zipek.sqflint.preprocessor.SQFMacro;
+import cz.zipek.sqflint.preprocessor.SQFMacroDefinition;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Streamed output has to be byte-identical to messages built using org.json.
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class JSONOutputTest {
+	@Test
+	public void testMessages() throws Exception {
+		Path dir = Files.createTempDirectory("sqflint");
+		Path header = dir.resolve("script_component.hpp");
+		Path file = dir.resolve("test.sqf");
+		Files.write(header, "#define LOG(a) diag_log a\n".getBytes(StandardCharsets.UTF_8));
+		
+		try {
+			SqfFile sqfFile = lint(file, String.join("\n",
+				"#include \"script_component.hpp\"",
+				"#define VALUE \"quoted \\\" value\"",
+				"/** Sum of values */",
+				"_total = VALUE;",
+				"LOG(_undefined);",
+				"_total = _total + ;"
+			));
+			
+			Token token = new Token();
+			token.beginLine = token.endLine = 1;
+			token.beginColumn = token.endColumn = 1;
+			sqfFile.getLinter().getWarnings().add(new Warning(header.toString(), token, "Included warning"));
+			
+			List<JSONObject> messages = build(sqfFile);
+			Set<String> types = new HashSet<>();
+			messages.forEach((message) -> types.add(message.getString("type")));
+			Assert.assertTrue(messages.stream().anyMatch((message) -> message.has("comment")));
+			Assert.assertEquals(
+				new HashSet<>(Arrays.asList("error", "warning", "variable", "include", "macro")),
+				types
+			);
+			
+			assertSame(sqfFile, messages);
+		} finally {
+			Files.delete(header);
+			Files.delete(dir);
+		}
+	}
+	
+	@Test
+	public void testPreprocessorError() throws Exception {
+		Path file = Files.createTempFile("sqflint", ".sqf");
+		try {
+			SqfFile sqfFile = lint(file, "#define\nx = 1;");
+			Assert.assertNotNull(sqfFile.getPreProcessorError());
+			
+			assertSame(sqfFile, build(sqfFile));
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	/**
+	 * Compares output of both formatters with messages built using org.json.
+	 */
+	private void assertSame(SqfFile sqfFile, List<JSONObject> messages) throws Exception {
+		StringBuilder lines = new StringBuilder();
+		for (JSONObject message : messages) {
+			lines.append(message.toString()).append('\n');
+		}
+		Assert.assertEquals(lines.toString(), print(new JSONOutput(), sqfFile));
+		
+		String response = print(new ServerOutput("test.sqf", "request"), sqfFile);
+		Matcher time = Pattern.compile("\"timeneeded\":(\\d+)}\n$").matcher(response);
+		Assert.assertTrue(response, time.find());
+		
+		String expected = new JSONStringer()
+			.object()
+				.key("id").value("request")
+				.key("file").value("test.sqf")
+				.key("messages").value(messages)
+				.key("timeneeded").value(Long.parseLong(time.group(1)))
+			.endObject()
+			.toString();
+		Assert.assertEquals(expected + "\n", response);
+	}
+	
+	private SqfFile lint(Path file, String contents) throws Exception {
+		Options options = new Options();
+		options.setOutputVariables(true);
+		options.setRootPath(file.getParent().toString());
+		
+		SqfFile sqfFile = new SqfFile(options, contents, file.toString());
+		sqfFile.process();
+		
+		return sqfFile;
+	}
+	
+	private String print(OutputFormatter formatter, SqfFile sqfFile) throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		formatter.print(sqfFile, new PrintStream(output, true, "UTF-8"), System.err);
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Builds messages the way they were built before output was streamed.
+	 */
+	private List<JSONObject> build(SqfFile sqfFile) {
+		List<JSONObject> result = new ArrayList<>();
+		
+		if (sqfFile.getPreProcessorError() != null) {
+			PreProcessorError preProcError = sqfFile.getPreProcessorError();
+			
+			JSONObject error = new JSONObject();
+			error.put("line", new JSONArray(new int[] { preProcError.getLine(), preProcError.getLine() }));
+			error.put("column", new JSONArray(new int[] { 0, 0 }));
+			error.put("type", "error");
+			error.put("message", preProcError.getMessage());
+			result.add(error);
+			
+			return result;
+		}
+		
+		Linter linter = sqfFile.getLinter();
+		
+		for (SQFParseException e : linter.getErrors()) {
+			JSONObject error = getRange(e.currentToken.next != null ? e.currentToken.next : e.currentToken);
+			error.put("type", "error");
+			error.put("message", e.getJSONMessage());
+			result.add(error);
+		}
+		
+		for (Warning e : linter.getWarnings()) {
+			JSONObject warning = getRange(e.getToken());
+			warning.put("type", "warning");
+			warning.put("message", e.getMessage());
+			if (e.getFilename() != null) {
+				warning.put("filename", e.getFilename());
+			}
+			result.add(warning);
+		}
+		
+		for (SQFVariable v : linter.getVariables().values()) {
+			JSONArray usage = new JSONArray();
+			v.usage.forEach((u) -> usage.put(getRange(u)));
+			JSONArray definitions = new JSONArray();
+			v.definitions.forEach((d) -> definitions.put(getRange(d)));
+			
+			JSONObject variable = new JSONObject();
+			variable.put("type", "variable");
+			variable.put("variable", v.name);
+			variable.put("usage", usage);
+			variable.put("definitions", definitions);
+			variable.put("comment", v.comments.size() > 0 && v.comments.get(0) != null ? v.comments.get(0).toString() : null);
+			result.add(variable);
+		}
+		
+		for (SQFInclude entry : sqfFile.getPreprocessor().getIncludes()) {
+			JSONObject include = new JSONObject();
+			include.put("type", "include");
+			include.put("include", entry.getFile());
+			include.put("expandedInclude", entry.getExpandedFile());
+			include.put("from", entry.getSource());
+			result.add(include);
+		}
+		
+		for (SQFMacro macro : sqfFile.getPreprocessor().getMacros().values()) {
+			JSONArray definitions = new JSONArray();
+			for (SQFMacroDefinition item : macro.getDefinitions()) {
+				JSONObject definition = new JSONObject();
+				definition.put("range", getRange(item.getToken()));
+				definition.put("value", item.getValue());
+				definition.put("filename", item.getFilename());
+				definitions.put(definition);
+			}
+			
+			JSONObject info = new JSONObject();
+			info.put("type", "macro");
+			info.put("macro", macro.getName());
+			info.put("arguments", macro.getArguments());
+			info.put("definitions", definitions);
+			result.add(info);
+		}
+		
+		return result;
+	}
+	
+	private JSONObject getRange(Token token) {
+		JSONObject range = new JSONObject();
+		range.put("line", new JSONArray(new int[] { token.beginLine, token.endLine }));
+		range.put("column", new JSONArray(new int[] { token.beginColumn, token.endColumn }));
+		return range;
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class JSONStreamWriterTest {
+	@Test
+	public void testEscaping() {
+		String[] values = {
+			"",
+			"plain",
+			"quote \" and \\ backslash",
+			"</script> a/b",
+			"\b\t\n\f\r \u0001 \u001f",
+			"\u007f \u0080 \u009f \u00a0 \u00e1",
+			"\u1fff \u2000 \u2028 \u20ff \u2100",
+			"\ud83d\ude00"
+		};
+		
+		for (String value : values) {
+			Assert.assertEquals(JSONObject.quote(value), write((writer) -> writer.value(value)));
+		}
+	}
+	
+	@Test
+	public void testStructure() {
+		String expected = new JSONStringer()
+			.object()
+				.key("id").value(new JSONObject().put("a", 1))
+				.key("items").array()
+					.object().key("line").array().value(1).value(2).endArray().endObject()
+					.object().endObject()
+					.array().endArray()
+				.endArray()
+				.key("empty").value(null)
+				.key("time").value(12L)
+			.endObject()
+			.toString();
+		
+		String written = write((writer) -> writer
+			.beginObject()
+				.key("id").value((Object)new JSONObject().put("a", 1))
+				.key("items").beginArray()
+					.beginObject().key("line").beginArray().value(1).value(2).endArray().endObject()
+					.beginObject().field("skipped", null).endObject()
+					.beginArray().endArray()
+				.endArray()
+				.key("empty").value((String)null)
+				.key("time").value(12L)
+			.endObject()
+		);
+		
+		Assert.assertEquals(expected, written);
+	}
+	
+	@Test
+	public void testLines() {
+		String written = write((writer) -> {
+			for (int i = 0; i < 3000; i++) {
+				writer.beginObject().field("value", "item " + i).endObject().newLine();
+			}
+		});
+		
+		String[] lines = written.split(System.lineSeparator());
+		Assert.assertEquals(3000, lines.length);
+		Assert.assertEquals("{\"value\":\"item 2999\"}", lines[2999]);
+	}
+	
+	private String write(Consumer<JSONStreamWriter> content) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream stream;
+		try {
+			stream = new PrintStream(buffer, false, "UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+		
+		JSONStreamWriter writer = new JSONStreamWriter(stream);
+		content.accept(writer);
+		writer.flush();
+		stream.flush();
+		
+		return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
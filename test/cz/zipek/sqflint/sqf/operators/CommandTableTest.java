@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2016 Jan Zípek (jan at zipek.cz).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.zipek.sqflint.sqf.operators;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Jan Zípek (jan at zipek.cz)
+ */
+public class CommandTableTest {
+	@Test
+	public void testCompiledTable() throws Exception {
+		Map<String, Operator> parsed = new TreeMap<>();
+		try (InputStream in = getClass().getResourceAsStream("/res/commands.txt")) {
+			OperatorRegistry.loadCommands(parsed, in);
+		}
+		
+		ByteArrayOutputStream table = new ByteArrayOutputStream();
+		CommandTable.write(parsed, table);
+		
+		Map<String, Operator> loaded = new TreeMap<>();
+		CommandTable.read(loaded, new ByteArrayInputStream(table.toByteArray()));
+		
+		Assert.assertEquals(parsed.keySet(), loaded.keySet());
+		
+		parsed.forEach((name, operator) -> {
+			GenericOperator expected = (GenericOperator)operator;
+			GenericOperator actual = (GenericOperator)loaded.get(name);
+			
+			Assert.assertEquals(name, new HashSet<>(expected.getLeft()), new HashSet<>(actual.getLeft()));
+			Assert.assertEquals(name, new HashSet<>(expected.getRight()), new HashSet<>(actual.getRight()));
+			Assert.assertEquals(name, expected.isLeftEmptyAllowed(), actual.isLeftEmptyAllowed());
+			Assert.assertEquals(name, expected.isRightEmptyAllowed(), actual.isRightEmptyAllowed());
+		});
+		
+		Assert.assertEquals(OperatorRegistry.load(false).size(), OperatorRegistry.load(true).size());
+	}
+}